@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2026 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.changelog;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds every `ifFoundBumpXXX` string in a single pass over the unreleased changes, using an
+ * Aho-Corasick automaton, no matter how many strings there are. Reports the highest bump found.
+ */
+final class BumpMatcher {
+	static final int NONE = 0, ADDED = 1, BREAKING = 2;
+
+	/** What this was compiled from, to notice when the lists change. */
+	private final List<String> breaking, added;
+	/** The sorted characters which leave each state, and the state that each of them leads to. */
+	private final char[][] keys;
+	private final int[][] next;
+	/** The state to fall back to when a character doesn't continue the current match. */
+	private final int[] fail;
+	/** The highest bump of any string which ends at each state, including those which end at its fallbacks. */
+	private final int[] bump;
+
+	private BumpMatcher(List<String> breaking, List<String> added) {
+		this.breaking = new ArrayList<>(breaking);
+		this.added = new ArrayList<>(added);
+
+		List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+		List<Integer> bumps = new ArrayList<>();
+		trie.add(new TreeMap<>());
+		bumps.add(NONE);
+		for (String toFind : added) {
+			add(trie, bumps, toFind, ADDED);
+		}
+		for (String toFind : breaking) {
+			add(trie, bumps, toFind, BREAKING);
+		}
+
+		int size = trie.size();
+		keys = new char[size][];
+		next = new int[size][];
+		fail = new int[size];
+		bump = new int[size];
+		for (int state = 0; state < size; ++state) {
+			TreeMap<Character, Integer> edges = trie.get(state);
+			keys[state] = new char[edges.size()];
+			next[state] = new int[edges.size()];
+			int i = 0;
+			for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+				keys[state][i] = edge.getKey();
+				next[state][i] = edge.getValue();
+				++i;
+			}
+			bump[state] = bumps.get(state);
+		}
+		// breadth-first, so that every fallback is finished before the states which fall back to it
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		queue.add(0);
+		while (!queue.isEmpty()) {
+			int state = queue.remove();
+			for (int i = 0; i < keys[state].length; ++i) {
+				char c = keys[state][i];
+				int child = next[state][i];
+				int fallback = 0;
+				if (state != 0) {
+					fallback = fail[state];
+					while (fallback != 0 && transition(fallback, c) == -1) {
+						fallback = fail[fallback];
+					}
+					int target = transition(fallback, c);
+					fallback = target == -1 ? 0 : target;
+				}
+				fail[child] = fallback;
+				bump[child] = Math.max(bump[child], bump[fallback]);
+				queue.add(child);
+			}
+		}
+	}
+
+	private static void add(List<TreeMap<Character, Integer>> trie, List<Integer> bumps, String toFind, int level) {
+		int state = 0;
+		for (int i = 0; i < toFind.length(); ++i) {
+			Integer child = trie.get(state).get(toFind.charAt(i));
+			if (child == null) {
+				child = trie.size();
+				trie.get(state).put(toFind.charAt(i), child);
+				trie.add(new TreeMap<>());
+				bumps.add(NONE);
+			}
+			state = child;
+		}
+		bumps.set(state, Math.max(bumps.get(state), level));
+	}
+
+	/** Compiles the given lists of strings to find. */
+	static BumpMatcher compile(List<String> breaking, List<String> added) {
+		return new BumpMatcher(breaking, added);
+	}
+
+	/** True if this was compiled from lists equal to these. */
+	boolean isCompiledFrom(List<String> breaking, List<String> added) {
+		return this.breaking.equals(breaking) && this.added.equals(added);
+	}
+
+	/** Returns the state reached from `state` by `c`, or -1 if there isn't a transition. */
+	private int transition(int state, char c) {
+		int i = Arrays.binarySearch(keys[state], c);
+		return i < 0 ? -1 : next[state][i];
+	}
+
+	/** Returns the highest bump found in the text, stopping as soon as it finds one which is at least `enough`. */
+	int highestBump(CharSequence text, int enough) {
+		int highest = bump[0];
+		int state = 0;
+		for (int i = 0; i < text.length() && highest < enough; ++i) {
+			char c = text.charAt(i);
+			int target;
+			while ((target = transition(state, c)) == -1 && state != 0) {
+				state = fail[state];
+			}
+			state = target == -1 ? 0 : target;
+			highest = Math.max(highest, bump[state]);
+		}
+		return highest;
+	}
+}
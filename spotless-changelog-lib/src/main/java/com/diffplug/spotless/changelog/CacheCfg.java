@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2026 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.changelog;
+
+
+import java.io.File;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentMap;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/** Configuration for the cache used by {@link ChangelogAndNext#calculateUsingCache}. */
+public class CacheCfg implements Serializable {
+	/** The most changelogs to keep versions for, the least recently used is evicted first, 0 disables the cache. */
+	public int maxEntries = 256;
+	/** How long to keep the versions for a changelog after they were calculated, null means until evicted. */
+	public @NullOr Duration timeToLive = null;
+	/**
+	 * Recognizes an unchanged changelog by a hash of its content instead of its size and last-modified time, so that
+	 * a checkout or a restored workspace which only touches the file doesn't invalidate the cache. Costs one read of
+	 * the file per lookup, which a miss then reuses for parsing.
+	 */
+	public boolean keyOnContentHash = false;
+	/** A directory which keeps the calculated versions across processes, null means they are only kept in memory. */
+	public @NullOr File persistentDir = null;
+	/**
+	 * Also keeps the parsed changelogs, behind soft references so that the garbage collector can reclaim them
+	 * whenever memory gets tight. Everyone who asks for the same unchanged changelog then shares one instance.
+	 */
+	public boolean keepChangelogs = false;
+	/**
+	 * Watches the directories of the changelogs for changes, so that checking an unchanged changelog
+	 * takes no filesystem calls at all. A change is noticed shortly after it happens, rather than
+	 * instantly. Platforms without native file watching (e.g. macOS) check the file every time instead.
+	 */
+	public boolean watchFiles = false;
+	/**
+	 * Shares the calculated versions with every other copy of this library which is given the same map, even those
+	 * loaded by a different classloader, since it only holds JDK types. Whoever creates the map decides how long it
+	 * lives and who gets it, e.g. the Gradle plugin keeps one for each build. Null means nothing is shared. It is
+	 * not serialized, since a copy of the map wouldn't be shared with anyone.
+	 */
+	public transient @NullOr ConcurrentMap<String, String> sharedVersions = null;
+
+	/** Returns a shallow copy of this object. */
+	public CacheCfg shallowCopy() {
+		CacheCfg copy = new CacheCfg();
+		copy.maxEntries = maxEntries;
+		copy.timeToLive = timeToLive;
+		copy.keyOnContentHash = keyOnContentHash;
+		copy.persistentDir = persistentDir;
+		copy.keepChangelogs = keepChangelogs;
+		copy.watchFiles = watchFiles;
+		copy.sharedVersions = sharedVersions;
+		return copy;
+	}
+}
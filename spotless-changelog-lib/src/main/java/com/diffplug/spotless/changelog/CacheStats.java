@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2026 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.changelog;
+
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A snapshot of the statistics for {@link ChangelogAndNext#calculateUsingCache}, from {@link ChangelogAndNext#cacheStats()}.
+ * The counts are cumulative for the life of the classloader, use {@link #minus(CacheStats)} to get the counts
+ * for an interval, e.g. a single build.
+ */
+public final class CacheStats {
+	private final long hitCount, missCount, evictionCount, parseCount, totalParseNanos, bytesRead, lazyChangelogLoads;
+
+	private CacheStats(long hitCount, long missCount, long evictionCount, long parseCount, long totalParseNanos, long bytesRead, long lazyChangelogLoads) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.parseCount = parseCount;
+		this.totalParseNanos = totalParseNanos;
+		this.bytesRead = bytesRead;
+		this.lazyChangelogLoads = lazyChangelogLoads;
+	}
+
+	/** Lookups which found their versions in memory, including those which waited for another thread's calculation. */
+	public long hitCount() {
+		return hitCount;
+	}
+
+	/** Lookups which had to calculate their versions, or read them from the {@link CacheCfg#persistentDir}. */
+	public long missCount() {
+		return missCount;
+	}
+
+	public long requestCount() {
+		return hitCount + missCount;
+	}
+
+	/** The fraction of lookups which were hits, 1.0 if there haven't been any lookups. */
+	public double hitRate() {
+		long requests = requestCount();
+		return requests == 0 ? 1.0 : (double) hitCount / requests;
+	}
+
+	/** Entries which were removed because they expired or didn't fit. */
+	public long evictionCount() {
+		return evictionCount;
+	}
+
+	/** Changelogs which were parsed, whether just the versions or the whole thing. */
+	public long parseCount() {
+		return parseCount;
+	}
+
+	/** The time spent in {@link #parseCount()} parses. */
+	public long totalParseNanos() {
+		return totalParseNanos;
+	}
+
+	/** Bytes of changelog which were read or memory-mapped. */
+	public long bytesRead() {
+		return bytesRead;
+	}
+
+	/** How many times someone asked for a full changelog which had to be parsed on demand. */
+	public long lazyChangelogLoads() {
+		return lazyChangelogLoads;
+	}
+
+	/** Returns the difference between these statistics and an earlier snapshot. */
+	public CacheStats minus(CacheStats earlier) {
+		return new CacheStats(
+				hitCount - earlier.hitCount,
+				missCount - earlier.missCount,
+				evictionCount - earlier.evictionCount,
+				parseCount - earlier.parseCount,
+				totalParseNanos - earlier.totalParseNanos,
+				bytesRead - earlier.bytesRead,
+				lazyChangelogLoads - earlier.lazyChangelogLoads);
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + hitCount + " misses=" + missCount + " evictions=" + evictionCount +
+				" parses=" + parseCount + " parseMs=" + totalParseNanos / 1_000_000 +
+				" bytesRead=" + bytesRead + " lazyChangelogLoads=" + lazyChangelogLoads;
+	}
+
+	/** The live counters behind the snapshots, which threads can update without contending. */
+	static final class Counter {
+		final LongAdder hits = new LongAdder();
+		final LongAdder misses = new LongAdder();
+		final LongAdder evictions = new LongAdder();
+		final LongAdder parses = new LongAdder();
+		final LongAdder parseNanos = new LongAdder();
+		final LongAdder bytesRead = new LongAdder();
+		final LongAdder lazyChangelogLoads = new LongAdder();
+
+		void recordParse(long nanos) {
+			parses.increment();
+			parseNanos.add(nanos);
+		}
+
+		CacheStats snapshot() {
+			return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), parses.sum(), parseNanos.sum(), bytesRead.sum(), lazyChangelogLoads.sum());
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2019-2021 DiffPlug
+ * Copyright (C) 2019-2026 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,11 +17,33 @@ package com.diffplug.spotless.changelog;
 
 
 import com.diffplug.common.base.Preconditions;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Objects;
-import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 import pl.tlinkowski.annotation.basic.NullOr;
 
 /**
@@ -36,15 +58,32 @@ public class Changelog {
 	private static final String UNRELEASED = VERSION_BEGIN + "Unreleased]";
 	private static final String DONT_PARSE_BELOW_HERE = "\n<!-- END CHANGELOG -->";
 	private final boolean windowsNewlines;
+	/** The full content which was parsed, with unix newlines. */
+	private final PoolString contentUnix;
 	private final PoolString dontParse, beforeUnreleased;
-	private final List<VersionEntry> versionsRaw;
+	private final Entries versionsRaw;
 	private final @NullOr PoolString unparseableAfterError;
+	/** Non-null only for {@link #parseVersionsOnly(String)}, holds everything after the most recently published version's header. */
+	private final @NullOr PoolString notParsedYet;
 	private final LinkedHashMap<Integer, String> parseErrors = new LinkedHashMap<>();
 
 	/** Takes a changelog string as its argument. */
 	public Changelog(String contentRaw) {
-		versionsRaw = new ArrayList<>();
-		PoolString contentUnix = PoolString.of(contentRaw.replace("\r\n", "\n"));
+		this(contentRaw, false);
+	}
+
+	/**
+	 * Parses only the `[Unreleased]` section and the header of the most recently published version,
+	 * which is everything needed for {@link #versionLast()} and {@link #unreleasedChanges()}. The rest
+	 * of the changelog is kept as an unparsed tail, so it still round-trips, but {@link #errors()} only
+	 * covers the headers which were actually parsed.
+	 */
+	static Changelog parseVersionsOnly(String contentRaw) {
+		return new Changelog(contentRaw, true);
+	}
+
+	private Changelog(String contentRaw, boolean versionsOnly) {
+		contentUnix = PoolString.of(contentRaw.replace("\r\n", "\n"));
 		windowsNewlines = contentUnix.length() < contentRaw.length();
 
 		PoolString toParse = contentUnix.until(DONT_PARSE_BELOW_HERE);
@@ -54,7 +93,9 @@ public class Changelog {
 		toParse = toParse.after(beforeUnreleased);
 
 		if (toParse.isEmpty()) {
+			versionsRaw = new Entries(toParse, new int[]{0}, new int[0], new int[0]);
 			unparseableAfterError = null;
+			notParsedYet = null;
 			if (!beforeUnreleased.endsWith(UNRELEASED)) {
 				int almostHadIt = contentRaw.indexOf("## [Unreleased]");
 				if (almostHadIt >= 0) {
@@ -67,48 +108,143 @@ public class Changelog {
 			return;
 		}
 
+		if (!versionsOnly && toParse.length() >= PARALLEL_AT_LEAST_CHARS) {
+			versionsRaw = parseInParallel(toParse);
+			PoolString rest = toParse.subSequence(versionsRaw.parsedEnd(), toParse.length());
+			unparseableAfterError = rest.isEmpty() ? null : rest;
+			notParsedYet = null;
+			return;
+		}
+
+		IntStream.Builder starts = IntStream.builder();
+		IntStream.Builder headerEnds = IntStream.builder();
+		IntStream.Builder versionEnds = IntStream.builder();
+		@NullOr
+		PoolString unparseable = null;
+		@NullOr
+		PoolString notParsed = null;
+		int start = 0;
+		int rows = 0;
 		while (true) {
-			int lastSlash = toParse.subSequence(1, toParse.length()).indexOf('\n');
-			PoolString versionHeader = lastSlash == -1 ? toParse : toParse.subSequence(0, lastSlash + 1);
-			VersionEntry version = VersionEntry.parse(versionHeader, this);
-			if (version == null) {
-				unparseableAfterError = toParse;
-				return;
-			}
-			toParse = toParse.after(versionHeader);
-			version.changes = toParse.until(VERSION_BEGIN);
-			versionsRaw.add(version);
-			toParse = toParse.after(version.changes);
-			if (toParse.isEmpty()) {
-				unparseableAfterError = null;
-				return;
+			int end = toParse.indexOf(VERSION_BEGIN, start + 1);
+			if (end == -1) {
+				end = toParse.length();
+			}
+			int headerEnd = headerEnd(toParse, start, end);
+			int versionEnd = VersionEntry.parseHeader(toParse.subSequence(start, headerEnd), rows == 0, this::addError);
+			if (versionEnd == VersionEntry.MALFORMED) {
+				unparseable = toParse.subSequence(start, toParse.length());
+				break;
+			}
+			starts.add(start);
+			headerEnds.add(headerEnd);
+			versionEnds.add(versionEnd);
+			++rows;
+			start = end;
+			if (start == toParse.length()) {
+				break;
+			} else if (versionsOnly && rows == 2) {
+				// [Unreleased] and the last published version are all that versionLast() and unreleasedChanges() need
+				notParsed = toParse.subSequence(start, toParse.length());
+				break;
 			}
 		}
+		// the last row ends where parsing stopped
+		starts.add(start);
+		versionsRaw = new Entries(toParse, starts.build().toArray(), headerEnds.build().toArray(), versionEnds.build().toArray());
+		unparseableAfterError = unparseable;
+		notParsedYet = notParsed;
+	}
+
+	/** Returns the end of the header line of the entry which runs from start to end. */
+	private static int headerEnd(PoolString toParse, int start, int end) {
+		int headerEnd = toParse.indexOf('\n', start + 1);
+		return headerEnd == -1 || headerEnd > end ? end : headerEnd;
+	}
+
+	/** Changelogs with at least this many characters to parse are parsed in parallel. */
+	static final int PARALLEL_AT_LEAST_CHARS = 1024 * 1024;
+
+	/**
+	 * Finds the headers and parses the entries of a big changelog in parallel on the common {@link java.util.concurrent.ForkJoinPool},
+	 * then keeps the entries up to the first error, with exactly the same result as the sequential parse.
+	 */
+	private Entries parseInParallel(PoolString toParse) {
+		// every entry starts at a VERSION_BEGIN, so the chunks can find them independently
+		int chunks = 4 * ForkJoinPool.getCommonPoolParallelism();
+		int[] starts = IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+			int chunkStart = (int) ((long) toParse.length() * chunk / chunks);
+			int chunkEnd = (int) ((long) toParse.length() * (chunk + 1) / chunks);
+			IntStream.Builder startsInChunk = IntStream.builder();
+			if (chunk == 0) {
+				startsInChunk.add(0);
+			}
+			int start = toParse.indexOf(VERSION_BEGIN, Math.max(chunkStart, 1));
+			while (start != -1 && start < chunkEnd) {
+				startsInChunk.add(start);
+				start = toParse.indexOf(VERSION_BEGIN, start + 1);
+			}
+			return startsInChunk.build();
+		}).flatMapToInt(Function.identity()).toArray();
+
+		int[] headerEnds = new int[starts.length];
+		int[] versionEnds = new int[starts.length];
+		int[] errorLines = new int[starts.length];
+		String[] errorMessages = new String[starts.length];
+		IntStream.range(0, starts.length).parallel().forEach(i -> {
+			int end = i + 1 < starts.length ? starts[i + 1] : toParse.length();
+			headerEnds[i] = headerEnd(toParse, starts[i], end);
+			versionEnds[i] = VersionEntry.parseHeader(toParse.subSequence(starts[i], headerEnds[i]), i == 0, (lineNumber, message) -> {
+				errorLines[i] = lineNumber;
+				errorMessages[i] = message;
+			});
+		});
+		int rows = 0;
+		while (rows < starts.length && versionEnds[rows] != VersionEntry.MALFORMED) {
+			++rows;
+		}
+		if (rows < starts.length) {
+			// the sequential parse stops at the first error, and so do we
+			addError(errorLines[rows], errorMessages[rows]);
+		}
+		int[] rowStarts = Arrays.copyOf(starts, rows + 1);
+		rowStarts[rows] = rows < starts.length ? starts[rows] : toParse.length();
+		return new Entries(toParse, rowStarts, Arrays.copyOf(headerEnds, rows), Arrays.copyOf(versionEnds, rows));
 	}
 
 	/** Copy-constructor. */
-	private Changelog(boolean windowsNewlines,
+	private Changelog(boolean windowsNewlines, PoolString contentUnix,
 			PoolString dontParse, PoolString beforeUnreleased,
-			List<VersionEntry> versionsRaw,
-			@NullOr PoolString unparseableAfterError) {
+			Entries versionsRaw,
+			@NullOr PoolString unparseableAfterError,
+			@NullOr PoolString notParsedYet) {
 		this.windowsNewlines = windowsNewlines;
+		this.contentUnix = contentUnix;
 		this.dontParse = dontParse;
 		this.beforeUnreleased = beforeUnreleased;
 		this.versionsRaw = versionsRaw;
 		this.unparseableAfterError = unparseableAfterError;
+		this.notParsedYet = notParsedYet;
 	}
 
 	/** Returns the full content of this changelog as a string unix-newlines. */
 	public String toStringUnix() {
-		PoolString total = beforeUnreleased;
-		for (VersionEntry entry : versionsRaw) {
-			total = total.concat(entry.toStringUnix());
-		}
+		return PoolString.join(segmentsUnix()).toString();
+	}
+
+	/** Every piece of this changelog in order, with unix newlines. */
+	private List<CharSequence> segmentsUnix() {
+		List<CharSequence> segments = new ArrayList<>(5 + 7 * versionsRaw.head.length);
+		segments.add(beforeUnreleased);
+		versionsRaw.addSegmentsUnix(segments);
 		if (unparseableAfterError != null) {
-			total = total.concat(unparseableAfterError);
+			segments.add(unparseableAfterError);
 		}
-		total = total.concat(dontParse);
-		return total.toString();
+		if (notParsedYet != null) {
+			segments.add(notParsedYet);
+		}
+		segments.add(dontParse);
+		return segments;
 	}
 
 	/** Returns the full content of this changelog as a string, with the same newlines as the input string. */
@@ -118,6 +254,243 @@ public class Changelog {
 		return windowsNewlines ? unix.replace("\n", "\r\n") : unix;
 	}
 
+	private static final int WRITE_BUFFER = 8 * 1024;
+
+	/**
+	 * Writes the same content as {@link #toString()} to the given writer, one buffer at a time,
+	 * without ever building the full string. Does not close or flush the writer.
+	 */
+	public void writeTo(Writer writer) throws IOException {
+		writeTo(segmentsUnix(), writer);
+	}
+
+	private void writeTo(List<CharSequence> segments, Writer writer) throws IOException {
+		char[] buffer = new char[WRITE_BUFFER];
+		int filled = 0;
+		for (CharSequence segment : segments) {
+			for (int i = 0; i < segment.length(); ++i) {
+				if (filled >= buffer.length - 1) {
+					writer.write(buffer, 0, filled);
+					filled = 0;
+				}
+				char c = segment.charAt(i);
+				if (c == '\n' && windowsNewlines) {
+					buffer[filled++] = '\r';
+				}
+				buffer[filled++] = c;
+			}
+		}
+		writer.write(buffer, 0, filled);
+	}
+
+	/**
+	 * Writes the same content as {@link #toString()} to the given channel as UTF-8, one buffer at a time,
+	 * without ever building the full string or its bytes. Does not close the channel.
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		writeTo(segmentsUnix(), channel);
+	}
+
+	private void writeTo(List<CharSequence> segments, WritableByteChannel channel) throws IOException {
+		CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		// not try-with-resources, because closing the writer would close the channel
+		Writer writer = Channels.newWriter(channel, encoder, WRITE_BUFFER);
+		writeTo(segments, writer);
+		writer.flush();
+	}
+
+	/**
+	 * Writes the same content as {@link #toString()} to the given file. If the file has the same size as the
+	 * content which this changelog was parsed from, then the unchanged tail is copied from the existing file with
+	 * {@link FileChannel#transferTo}, checked against the parsed content, and the result is moved into place
+	 * atomically, keeping the permissions and owner of the file, and following it if it is a symlink. If the
+	 * copied tail doesn't match, because the file was edited since it was parsed, the whole content is written
+	 * instead. If the size doesn't match, or the filesystem doesn't support POSIX attributes, the whole file is
+	 * written in place.
+	 */
+	public void writeTo(File file) throws IOException {
+		Path path = file.toPath();
+		List<CharSequence> segments = segmentsUnix();
+		// walk backwards over the segments which are still exactly where they were in the parsed content
+		int headSegments = segments.size();
+		int tailStart = contentUnix.length();
+		while (headSegments > 0) {
+			CharSequence segment = segments.get(headSegments - 1);
+			if (segment.length() == 0) {
+				--headSegments;
+			} else if (segment instanceof PoolString && ((PoolString) segment).isSliceOf(contentUnix)
+					&& ((PoolString) segment).endIn(contentUnix) == tailStart) {
+				tailStart = ((PoolString) segment).startIn(contentUnix);
+				--headSegments;
+			} else {
+				break;
+			}
+		}
+		long[] tailStartAndTotal = rawByteOffsets(tailStart);
+		long tailStartByte = tailStartAndTotal[0];
+		long totalBytes = tailStartAndTotal[1];
+		if (tailStartByte == totalBytes || !Files.isRegularFile(path) || Files.size(path) != totalBytes) {
+			writeInPlace(segments, path);
+			return;
+		}
+		Path real = path.toRealPath();
+		Path temp = createTempSibling(real);
+		if (temp == null) {
+			writeInPlace(segments, path);
+			return;
+		}
+		boolean moved = false;
+		try {
+			try (FileChannel out = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+					FileChannel in = FileChannel.open(real, StandardOpenOption.READ)) {
+				writeTo(segments.subList(0, headSegments), out);
+				long tailStartInTemp = out.position();
+				long position = tailStartByte;
+				while (position < totalBytes) {
+					long transferred = in.transferTo(position, totalBytes - position, out);
+					if (transferred == 0) {
+						// the file got shorter since we checked its size
+						break;
+					}
+					position += transferred;
+				}
+				// the same size doesn't mean the same content, so check what was copied before it goes anywhere
+				ContentComparison tail = new ContentComparison(out, tailStartInTemp);
+				writeTo(segments.subList(headSegments, segments.size()), tail);
+				if (!tail.matches || tail.position != out.size()) {
+					out.truncate(0);
+					out.position(0);
+					writeTo(segments, out);
+				}
+			}
+			try {
+				Files.move(temp, real, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, real, StandardCopyOption.REPLACE_EXISTING);
+			}
+			moved = true;
+		} finally {
+			if (!moved) {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+	/** A channel which compares everything written to it against the content of a file, starting at the given position. */
+	private static final class ContentComparison implements WritableByteChannel {
+		private final FileChannel file;
+		private final ByteBuffer actual = ByteBuffer.allocate(WRITE_BUFFER);
+		long position;
+		boolean matches = true;
+
+		ContentComparison(FileChannel file, long position) {
+			this.file = file;
+			this.position = position;
+		}
+
+		@Override
+		public int write(ByteBuffer expected) throws IOException {
+			int length = expected.remaining();
+			while (matches && expected.hasRemaining()) {
+				actual.clear();
+				actual.limit(Math.min(actual.capacity(), expected.remaining()));
+				int read = file.read(actual, position);
+				if (read <= 0) {
+					matches = false;
+					break;
+				}
+				actual.flip();
+				ByteBuffer expectedChunk = expected.duplicate();
+				expectedChunk.limit(expectedChunk.position() + read);
+				matches = expectedChunk.equals(actual);
+				expected.position(expected.position() + read);
+				position += read;
+			}
+			expected.position(expected.limit());
+			return length;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {}
+	}
+
+	private void writeInPlace(List<CharSequence> segments, Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeTo(segments, channel);
+		}
+	}
+
+	/**
+	 * Creates a uniquely-named empty file next to `real` with the same permissions, owner, and group, so that
+	 * moving it over `real` changes nothing but the content. Returns null if that isn't possible, e.g. on a
+	 * filesystem without POSIX attributes, or if the owner can't be set.
+	 */
+	private static @NullOr Path createTempSibling(Path real) {
+		PosixFileAttributeView view = Files.getFileAttributeView(real, PosixFileAttributeView.class);
+		if (view == null) {
+			return null;
+		}
+		Path temp = null;
+		try {
+			PosixFileAttributes attributes = view.readAttributes();
+			temp = Files.createTempFile(real.getParent(), real.getFileName().toString(), ".tmp");
+			PosixFileAttributeView tempView = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+			if (!attributes.group().equals(tempView.readAttributes().group())) {
+				tempView.setGroup(attributes.group());
+			}
+			if (!attributes.owner().equals(tempView.getOwner())) {
+				tempView.setOwner(attributes.owner());
+			}
+			tempView.setPermissions(attributes.permissions());
+			return temp;
+		} catch (IOException | UnsupportedOperationException | SecurityException e) {
+			if (temp != null) {
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException suppressed) {
+					// nothing else to try
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the offset in UTF-8 bytes of the given unix-newline offset into the parsed content,
+	 * and the byte length of the whole parsed content, both using the newlines of the original input.
+	 */
+	private long[] rawByteOffsets(int offset) {
+		long bytes = 0;
+		long atOffset = 0;
+		for (int i = 0; i < contentUnix.length(); ++i) {
+			if (i == offset) {
+				atOffset = bytes;
+			}
+			char c = contentUnix.charAt(i);
+			if (c < 0x80) {
+				bytes += (c == '\n' && windowsNewlines) ? 2 : 1;
+			} else if (c < 0x800) {
+				bytes += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < contentUnix.length() && Character.isLowSurrogate(contentUnix.charAt(i + 1))) {
+				bytes += 4;
+				++i;
+			} else {
+				bytes += 3;
+			}
+		}
+		if (offset == contentUnix.length()) {
+			atOffset = bytes;
+		}
+		return new long[]{atOffset, bytes};
+	}
+
 	/** Returns the most recently published version, if any. */
 	public @NullOr String versionLast() {
 		if (versionsRaw.size() <= 1) {
@@ -127,14 +500,51 @@ public class Changelog {
 		}
 	}
 
+	/**
+	 * Returns a copy of the entry for the given version, or null if there isn't one. Changing the copy
+	 * doesn't change this changelog. The first lookup builds an index of every version, after which each
+	 * lookup takes constant time.
+	 */
+	public @NullOr VersionEntry entry(String version) {
+		int index = indexOfFullyParsed(version);
+		return index == -1 ? null : versionsRaw.get(index).copy();
+	}
+
+	/**
+	 * Returns copies of the entries which were published after `fromExclusive` up to and including `toInclusive`,
+	 * newest first, in the same order as the changelog.
+	 */
+	public List<VersionEntry> entriesBetween(String fromExclusive, String toInclusive) {
+		int from = indexOfFullyParsed(fromExclusive);
+		int to = indexOfFullyParsed(toInclusive);
+		Preconditions.checkArgument(from != -1, "No such version %s", fromExclusive);
+		Preconditions.checkArgument(to != -1, "No such version %s", toInclusive);
+		Preconditions.checkArgument(to <= from, "%s was published before %s", toInclusive, fromExclusive);
+		List<VersionEntry> between = new ArrayList<>(from - to);
+		for (int i = to; i < from; ++i) {
+			between.add(versionsRaw.get(i).copy());
+		}
+		return between;
+	}
+
+	private int indexOfFullyParsed(String version) {
+		Preconditions.checkArgument(notParsedYet == null, "Only the most recent versions of this changelog were parsed");
+		return versionsRaw.indexOf(version);
+	}
+
 	/** Returns the string describing unreleased changes - starts with a newline, and has unix newlines. */
 	public String unreleasedChanges() {
-		if (versionsRaw.isEmpty()) {
+		if (versionsRaw.size() == 0) {
 			return "";
 		}
 		return versionsRaw.get(0).changes.toString();
 	}
 
+	/** Returns an index of the `### ` sections in the unreleased changes. */
+	public UnreleasedSections unreleasedSections() {
+		return UnreleasedSections.parse(unreleasedChanges());
+	}
+
 	/** Returns true if there are no unreleased changes. */
 	public boolean noUnreleasedChanges() {
 		return unreleasedChanges().replace("\n", "").trim().isEmpty();
@@ -144,6 +554,11 @@ public class Changelog {
 		parseErrors.put(lineNumber, message);
 	}
 
+	/** Receives a parse error. */
+	private interface ErrorSink {
+		void addError(int lineNumber, String message);
+	}
+
 	/** Map from line number to the error message, in the order they were encountered. */
 	public LinkedHashMap<Integer, String> errors() {
 		return parseErrors;
@@ -163,6 +578,9 @@ public class Changelog {
 		/** The changes for this version. Guaranteed to be non-null once parsed. */
 		private @NullOr PoolString changes;
 
+		/** The header line exactly as it was parsed, null once the header has been changed. */
+		private @NullOr PoolString headerRaw;
+
 		private VersionEntry() {}
 
 		private VersionEntry copy() {
@@ -171,6 +589,7 @@ public class Changelog {
 			copy.date = date;
 			copy.headerMisc = headerMisc;
 			copy.changes = changes;
+			copy.headerRaw = headerRaw;
 			return copy;
 		}
 
@@ -215,6 +634,7 @@ public class Changelog {
 
 		/** Sets the changes to be used in this entry (must be start with a newline, or be empty). Unix or windows newlines are fine. */
 		public VersionEntry setHeaderMisc(@NullOr String headerMisc) {
+			this.headerRaw = null;
 			if (headerMisc == null) {
 				this.headerMisc = null;
 				return this;
@@ -250,80 +670,205 @@ public class Changelog {
 			return change;
 		}
 
-		private static @NullOr VersionEntry parse(PoolString line, Changelog parser) {
-			VersionEntry header = new VersionEntry();
-			if (parser.versionsRaw.isEmpty()) {
+		/** Returned by {@link #parseHeader} for the `[Unreleased]` header, which has no version. */
+		private static final int UNRELEASED_HEADER = -1;
+		/** Returned by {@link #parseHeader} after it has reported an error. */
+		private static final int MALFORMED = -2;
+
+		/**
+		 * Checks a header line and returns where its version ends, {@link #UNRELEASED_HEADER}, or {@link #MALFORMED}
+		 * after reporting an error.
+		 */
+		private static int parseHeader(PoolString line, boolean unreleased, ErrorSink errors) {
+			if (unreleased) {
 				Preconditions.checkArgument(line.startsWith(UNRELEASED));
-				header.headerMisc = line.subSequence(UNRELEASED.length(), line.length());
-				return header;
+				return UNRELEASED_HEADER;
 			}
 			Preconditions.checkArgument(line.startsWith(VERSION_BEGIN));
+			// the line starts with the newline which ends the previous line
+			int lineNumber = line.baseLineNumberStart() + 1;
 			int versionEnd = line.indexOf("] - ");
 			if (versionEnd == -1) {
-				parser.addError(line.baseLineNumberStart(), "'] - ' is missing from the expected '## [x.y.z] - yyyy-mm-dd'");
-				return null;
+				errors.addError(lineNumber, "'] - ' is missing from the expected '## [x.y.z] - yyyy-mm-dd'");
+				return MALFORMED;
 			}
 
-			int startDate = versionEnd + "] - ".length();
-			int endDate = startDate + "yyyy-mm-dd".length();
+			int endDate = versionEnd + "] - yyyy-mm-dd".length();
 			if (endDate > line.length()) {
-				parser.addError(line.baseLineNumberStart(), "'yyyy-mm-dd' is missing from the expected '## [x.y.z] - yyyy-mm-dd'");
-				return null;
+				errors.addError(lineNumber, "'yyyy-mm-dd' is missing from the expected '## [x.y.z] - yyyy-mm-dd'");
+				return MALFORMED;
 			}
-
-			@NullOr
-			PoolString misc;
-			if (endDate == line.length()) {
-				misc = null;
-			} else {
-				// endDate > line.length()
-				if (line.charAt(endDate) != ' ') {
-					parser.addError(line.baseLineNumberStart(), "If you want to put stuff after 'yyyy-mm-dd', you need to separate it with a space");
-					return null;
-				} else {
-					misc = line.subSequence(endDate + 1, line.length());
-				}
+			if (endDate < line.length() && line.charAt(endDate) != ' ') {
+				errors.addError(lineNumber, "If you want to put stuff after 'yyyy-mm-dd', you need to separate it with a space");
+				return MALFORMED;
 			}
+			return versionEnd;
+		}
 
+		/** Creates the entry for a header line which {@link #parseHeader} has already checked. */
+		private static VersionEntry fromHeader(PoolString line, int versionEnd) {
+			VersionEntry header = new VersionEntry();
+			header.headerRaw = line;
+			if (versionEnd == UNRELEASED_HEADER) {
+				header.headerMisc = line.subSequence(UNRELEASED.length(), line.length());
+				return header;
+			}
+			int startDate = versionEnd + "] - ".length();
+			int endDate = startDate + "yyyy-mm-dd".length();
 			header.version = line.subSequence(VERSION_BEGIN.length(), versionEnd);
 			header.date = line.subSequence(startDate, endDate);
-			header.headerMisc = misc;
+			header.headerMisc = endDate == line.length() ? null : line.subSequence(endDate + 1, line.length());
 			return header;
 		}
 
-		PoolString toStringUnix() {
-			if (version == null) {
+		void addSegmentsUnix(List<CharSequence> segments) {
+			if (headerRaw != null) {
+				// keeps an unchanged entry contiguous with the content it was parsed from
+				Collections.addAll(segments, headerRaw, changes);
+			} else if (version == null) {
 				// {{beforeUnreleased includes '## [Unreleased]'}}{{misc}}
-				return PoolString.concat(Changelog.UNRELEASED, headerMisc, changes);
+				Collections.addAll(segments, Changelog.UNRELEASED, headerMisc, changes);
 			} else if (headerMisc == null) {
-				return PoolString.concat("\n## [", version, "] - ", date, changes);
+				Collections.addAll(segments, "\n## [", version, "] - ", date, changes);
 			} else {
-				return PoolString.concat("\n## [", version, "] - ", date, " ", headerMisc, changes);
+				Collections.addAll(segments, "\n## [", version, "] - ", date, " ", headerMisc, changes);
 			}
 		}
 	}
 
-	/** Returns a ParsedChangelog where the version list has been mutated by the given mutator. */
-	private Changelog withMutatedVersions(Consumer<List<VersionEntry>> mutator) {
-		List<VersionEntry> copy = new ArrayList<>(versionsRaw);
-		mutator.accept(copy);
-		return new Changelog(windowsNewlines,
-				dontParse, beforeUnreleased,
-				copy,
-				unparseableAfterError);
+	/**
+	 * The parsed entries, kept as offsets into the content they were parsed from. A {@link VersionEntry}
+	 * is only created for an entry when it is accessed, and entries which have been changed or added are
+	 * kept in front of the rows which haven't.
+	 */
+	private static final class Entries {
+		/** The content which the rows were parsed from. */
+		private final PoolString parsed;
+		/** Row `i` runs from `starts[i]` to `starts[i + 1]`, so there is one more start than there are rows. */
+		private final int[] starts;
+		/** Where the header line of each row ends. */
+		private final int[] headerEnds;
+		/** Where the version of each row ends within its header line, see {@link VersionEntry#parseHeader}. */
+		private final int[] versionEnds;
+		/** Entries which have been created so far, shared by every copy, and never mutated. */
+		private final VersionEntry[] created;
+		/** Entries which come before the rows. */
+		private final VersionEntry[] head;
+		/** The first row which hasn't been replaced by the head. */
+		private final int firstRow;
+
+		Entries(PoolString parsed, int[] starts, int[] headerEnds, int[] versionEnds) {
+			this.parsed = parsed;
+			this.starts = starts;
+			this.headerEnds = headerEnds;
+			this.versionEnds = versionEnds;
+			this.created = new VersionEntry[headerEnds.length];
+			this.head = new VersionEntry[0];
+			this.firstRow = 0;
+		}
+
+		private Entries(Entries rows, VersionEntry[] head, int firstRow) {
+			this.parsed = rows.parsed;
+			this.starts = rows.starts;
+			this.headerEnds = rows.headerEnds;
+			this.versionEnds = rows.versionEnds;
+			this.created = rows.created;
+			this.head = head;
+			this.firstRow = firstRow;
+		}
+
+		int size() {
+			return head.length + headerEnds.length - firstRow;
+		}
+
+		/** Where parsing stopped within {@link #parsed}. */
+		int parsedEnd() {
+			return starts[headerEnds.length];
+		}
+
+		VersionEntry get(int index) {
+			if (index < head.length) {
+				return head[index];
+			}
+			int row = firstRow + index - head.length;
+			synchronized (created) {
+				VersionEntry entry = created[row];
+				if (entry == null) {
+					entry = VersionEntry.fromHeader(parsed.subSequence(starts[row], headerEnds[row]), versionEnds[row]);
+					entry.changes = parsed.subSequence(headerEnds[row], starts[row + 1]);
+					created[row] = entry;
+				}
+				return entry;
+			}
+		}
+
+		/** Maps each version to its index, built on first use. */
+		private volatile @NullOr HashMap<String, Integer> index;
+
+		/** Returns the index of the given version, or -1 if it isn't present. */
+		int indexOf(String version) {
+			HashMap<String, Integer> index = this.index;
+			if (index == null) {
+				synchronized (this) {
+					index = this.index;
+					if (index == null) {
+						index = buildIndex();
+						this.index = index;
+					}
+				}
+			}
+			Integer found = index.get(version);
+			return found == null ? -1 : found;
+		}
+
+		private HashMap<String, Integer> buildIndex() {
+			HashMap<String, Integer> index = new HashMap<>(size() * 4 / 3 + 1);
+			for (int i = 0; i < head.length; ++i) {
+				if (!head[i].isUnreleased()) {
+					index.putIfAbsent(head[i].version.toString(), i);
+				}
+			}
+			for (int row = firstRow; row < headerEnds.length; ++row) {
+				if (versionEnds[row] != VersionEntry.UNRELEASED_HEADER) {
+					// reads the version straight from the row, without creating its entry
+					String version = parsed.subSequence(starts[row] + VERSION_BEGIN.length(), starts[row] + versionEnds[row]).toString();
+					index.putIfAbsent(version, head.length + row - firstRow);
+				}
+			}
+			return index;
+		}
+
+		/** Returns a copy where the first `count` entries have been replaced by the given entries. */
+		Entries replaceHead(int count, VersionEntry... replacements) {
+			Preconditions.checkArgument(count <= size());
+			int fromHead = Math.min(count, head.length);
+			VersionEntry[] newHead = new VersionEntry[replacements.length + head.length - fromHead];
+			System.arraycopy(replacements, 0, newHead, 0, replacements.length);
+			System.arraycopy(head, fromHead, newHead, replacements.length, head.length - fromHead);
+			return new Entries(this, newHead, firstRow + count - fromHead);
+		}
+
+		void addSegmentsUnix(List<CharSequence> segments) {
+			for (VersionEntry entry : head) {
+				entry.addSegmentsUnix(segments);
+			}
+			// the rows are unchanged, so they are still exactly what they were parsed from
+			segments.add(parsed.subSequence(starts[firstRow], parsedEnd()));
+		}
 	}
 
 	/** Returns a new changelog where the [Unreleased] section has been released with the given version and date. */
 	public Changelog releaseUnreleased(String version, String date) {
-		return withMutatedVersions(list -> {
-			VersionEntry unreleased = list.get(0);
-			Preconditions.checkArgument(unreleased.isUnreleased());
+		VersionEntry unreleased = versionsRaw.get(0);
+		Preconditions.checkArgument(unreleased.isUnreleased());
 
-			VersionEntry entry = VersionEntry.versionDate(version, date);
-			entry.setChanges(unreleased.changes());
+		VersionEntry entry = VersionEntry.versionDate(version, date);
+		entry.setChanges(unreleased.changes());
 
-			list.set(0, unreleased.copy().setChanges("\n"));
-			list.add(1, entry);
-		});
+		return new Changelog(windowsNewlines, contentUnix,
+				dontParse, beforeUnreleased,
+				versionsRaw.replaceHead(1, unreleased.copy().setChanges("\n"), entry),
+				unparseableAfterError,
+				notParsedYet);
 	}
 }
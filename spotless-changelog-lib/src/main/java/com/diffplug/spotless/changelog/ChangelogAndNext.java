@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2019-2020 DiffPlug
+ * Copyright (C) 2019-2026 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,15 +19,17 @@ package com.diffplug.spotless.changelog;
 import com.diffplug.common.base.Errors;
 import com.diffplug.common.base.StringPrinter;
 import com.diffplug.common.base.Suppliers;
-import com.diffplug.common.collect.Maps;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 import pl.tlinkowski.annotation.basic.NullOr;
 
@@ -46,15 +48,78 @@ public class ChangelogAndNext {
 	/** Computes a ChangelogModel from the given changelogFile. */
 	public static ChangelogAndNext calculate(File changelogFile, NextVersionCfg cfg) throws IOException {
 		assertChangelogFileExists(changelogFile, cfg);
-		String content = new String(Files.readAllBytes(changelogFile.toPath()), StandardCharsets.UTF_8);
-		return calculate(content, cfg);
+		return calculate(read(changelogFile), changelogFile, cfg, null);
+	}
+
+	/**
+	 * Same as calling {@link #calculate(File, NextVersionCfg) calculate()} for each entry, but the
+	 * files are read and parsed concurrently on the given executor. Configs which are equal are shared,
+	 * so that each distinct config only prepares its function once. Returns the results in the order of
+	 * the given map. If any of them fail, the first failure is thrown with the others suppressed.
+	 */
+	public static Map<File, ChangelogAndNext> calculateAll(Map<File, NextVersionCfg> cfgs, Executor executor) throws IOException {
+		Map<Fingerprint, NextVersionCfg> distinctCfgs = new HashMap<>();
+		Map<File, CompletableFuture<ChangelogAndNext>> calculating = new LinkedHashMap<>();
+		for (Map.Entry<File, NextVersionCfg> entry : cfgs.entrySet()) {
+			File changelogFile = entry.getKey();
+			NextVersionCfg cfg = entry.getValue();
+			if (cfg.function.isBuiltIn()) {
+				cfg = distinctCfgs.computeIfAbsent(fingerprint(cfg), unused -> entry.getValue());
+			}
+			NextVersionCfg sharedCfg = cfg;
+			calculating.put(changelogFile, CompletableFuture.supplyAsync(() -> {
+				assertChangelogFileExists(changelogFile, sharedCfg);
+				try {
+					return read(changelogFile);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, executor).thenApplyAsync(content -> calculate(content, changelogFile, sharedCfg, null), executor));
+		}
+		Map<File, ChangelogAndNext> results = new LinkedHashMap<>();
+		Throwable failure = null;
+		for (Map.Entry<File, CompletableFuture<ChangelogAndNext>> entry : calculating.entrySet()) {
+			try {
+				results.put(entry.getKey(), entry.getValue().join());
+			} catch (CompletionException e) {
+				Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+				if (failure == null) {
+					failure = cause;
+				} else {
+					failure.addSuppressed(cause);
+				}
+			}
+		}
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw new IOException(failure);
+		}
+		return results;
+	}
+
+	private static ByteBuffer read(File changelogFile) throws IOException {
+		ByteBuffer content = ChangelogBytes.read(changelogFile.toPath());
+		cache.stats.bytesRead.add(content.remaining());
+		return content;
+	}
+
+	private static Changelog parse(Supplier<Changelog> parser) {
+		long start = System.nanoTime();
+		Changelog changelog = parser.get();
+		cache.stats.recordParse(System.nanoTime() - start);
+		return changelog;
 	}
 
 	private static void assertChangelogFileExists(File changelogFile, NextVersionCfg cfg) {
 		if (!(changelogFile.exists() && changelogFile.isFile())) {
 			throw new IllegalArgumentException(StringPrinter.buildString(printer -> {
 				printer.println("Looked for changelog at '" + changelogFile.getAbsolutePath() + "', but it was not present.");
-				if (changelogFile.getName().equals(DEFAULT_FILE) && Serialized.fromValue(cfg).equals(Serialized.fromValue(new NextVersionCfg()))) {
+				if (changelogFile.getName().equals(DEFAULT_FILE) && fingerprint(cfg).equals(fingerprint(new NextVersionCfg()))) {
 					printer.println("Spotless Changelog is set exactly to its defaults.");
 					printer.println("If that is surprising, you need to move your Spotless Changelog configuration closer to the top.");
 				}
@@ -62,9 +127,58 @@ public class ChangelogAndNext {
 		}
 	}
 
+	private static Fingerprint fingerprint(NextVersionCfg cfg) {
+		Fingerprint.Builder fingerprint = Fingerprint.builder();
+		cfg.addTo(fingerprint);
+		return fingerprint.build();
+	}
+
 	static ChangelogAndNext calculate(String content, NextVersionCfg cfg) {
-		Changelog changelog = new Changelog(content);
+		return calculate(parse(() -> Changelog.parseVersionsOnly(content)), () -> new Changelog(content), cfg);
+	}
+
+	/**
+	 * Only decodes the top of the changelog to calculate the versions, the rest waits until someone asks for the changelog.
+	 * A mapped file can change or shrink underneath its mapping, so a mapping is never kept for later, and the changelog
+	 * is read again when it is asked for. If `memoizeFor` is non-null, the versions are memoized for its changelog,
+	 * see {@link Versions#key()}.
+	 */
+	private static ChangelogAndNext calculate(ByteBuffer content, File changelogFile, NextVersionCfg cfg, @NullOr Input memoizeFor) {
+		String versionsOnly = ChangelogBytes.decode(content, 0, ChangelogBytes.versionsOnlyLength(content));
+		Supplier<Changelog> fullChangelog;
+		if (content.isDirect()) {
+			fullChangelog = Errors.rethrow().wrap(() -> new Changelog(ChangelogBytes.decode(read(changelogFile))));
+		} else {
+			fullChangelog = () -> new Changelog(ChangelogBytes.decode(content));
+		}
+		return calculate(parse(() -> Changelog.parseVersionsOnly(versionsOnly)), fullChangelog, cfg, memoizeFor);
+	}
 
+	private static ChangelogAndNext calculate(Changelog changelog, Supplier<Changelog> fullChangelog, NextVersionCfg cfg) {
+		return calculate(changelog, fullChangelog, cfg, null);
+	}
+
+	/** The versions only need the top of the changelog, the full parse waits until someone asks for it. */
+	private static ChangelogAndNext calculate(Changelog changelog, Supplier<Changelog> fullChangelog, NextVersionCfg cfg, @NullOr Input memoizeFor) {
+		Versions versions;
+		if (memoizeFor == null) {
+			versions = new Versions(nextVersion(changelog, cfg), changelog.versionLast(), null);
+		} else {
+			String path = memoizeFor.changelogFile.canonicalPath();
+			Fingerprint key = Versions.key(changelog, memoizeFor.cfgFingerprint());
+			versions = cache.memoized(path, key);
+			if (versions == null) {
+				versions = new Versions(nextVersion(changelog, cfg), changelog.versionLast(), key);
+				cache.memoize(path, versions);
+			}
+		}
+		return new ChangelogAndNext(Suppliers.memoize(() -> {
+			cache.stats.lazyChangelogLoads.increment();
+			return parse(fullChangelog);
+		}), versions);
+	}
+
+	private static String nextVersion(Changelog changelog, NextVersionCfg cfg) {
 		String nextVersion;
 		if (cfg.forceNextVersion != null) {
 			nextVersion = cfg.forceNextVersion;
@@ -83,7 +197,7 @@ public class ChangelogAndNext {
 				nextVersion = nextVersion + DASH_SNAPSHOT;
 			}
 		}
-		return new ChangelogAndNext(() -> changelog, new Versions(nextVersion, changelog));
+		return nextVersion;
 	}
 
 	/** Internally lazy to facilitate easy caching of the versions, without having to cache the whole changelog. */
@@ -106,10 +220,16 @@ public class ChangelogAndNext {
 	/** The next and previously published versions. */
 	public static class Versions implements Serializable {
 		private final String next, last;
+		private final transient @NullOr Fingerprint key;
+
+		Versions(String next, @NullOr String last) {
+			this(next, last, null);
+		}
 
-		private Versions(String next, Changelog changelog) {
+		Versions(String next, @NullOr String last, @NullOr Fingerprint key) {
 			this.next = next;
-			this.last = changelog.versionLast();
+			this.last = last;
+			this.key = key;
 		}
 
 		public String next() {
@@ -119,6 +239,24 @@ public class ChangelogAndNext {
 		public String last() {
 			return last;
 		}
+
+		/**
+		 * Identifies everything these versions were calculated from: the unreleased changes, the last
+		 * version, and the config. Edits anywhere else in the changelog don't change it. Null if unknown.
+		 */
+		@NullOr
+		Fingerprint key() {
+			return key;
+		}
+
+		/** `cfg` is the {@link Input#cfgFingerprint()}, which was already computed for the cache. */
+		static Fingerprint key(Changelog changelog, Fingerprint cfg) {
+			Fingerprint.Builder key = Fingerprint.builder();
+			key.putBytes(cfg.toBytes());
+			key.putString(changelog.unreleasedChanges());
+			key.putString(changelog.versionLast());
+			return key.build();
+		}
 	}
 
 	/** The input to the next-version calculation. */
@@ -126,52 +264,113 @@ public class ChangelogAndNext {
 		FileSignature changelogFile;
 		@NullOr
 		NextVersionCfg cfgNextVersion;
+		private transient @NullOr NextVersionCfg fingerprinted;
+		private transient @NullOr Fingerprint cfgFingerprint;
+
+		/** Identifies this input without serializing it. */
+		Fingerprint fingerprint() {
+			Fingerprint.Builder fingerprint = Fingerprint.builder();
+			changelogFile.addTo(fingerprint);
+			fingerprint.putBytes(cfgFingerprint().toBytes());
+			return fingerprint.build();
+		}
+
+		/** Identifies {@link #cfgNextVersion}, computed only once for each config, since a custom function gets serialized for it. */
+		Fingerprint cfgFingerprint() {
+			NextVersionCfg cfg = cfgNextVersion;
+			if (cfgFingerprint == null || fingerprinted != cfg) {
+				Fingerprint.Builder fingerprint = Fingerprint.builder();
+				fingerprint.putBoolean(cfg != null);
+				if (cfg != null) {
+					cfg.addTo(fingerprint);
+				}
+				cfgFingerprint = fingerprint.build();
+				fingerprinted = cfg;
+			}
+			return cfgFingerprint;
+		}
 	}
 
 	/**
 	 * Exact same behavior as {@link #calculate(File, NextVersionCfg) calculate()}, but it uses an in-memory
-	 * per-changelogfile cache to optimize performance and delay parsing the changelog if possible.  Only
-	 * downside is that you will leak a teensy-teensy bit of memory since there's no way to clear the cache.
+	 * per-changelogfile cache to optimize performance and delay parsing the changelog if possible.  The cache
+	 * is bounded by {@link #setCacheCfg(CacheCfg)}, and can be emptied with {@link #clearCache()}.
 	 * 
-	 * It doesn't cache the parsed changelog, only the versions, since those are usually all the user needs.
-	 * The changelog is parsed lazily when it is asked for. 
+	 * By default it doesn't cache the parsed changelog, only the versions, since those are usually all the user needs.
+	 * The changelog is parsed lazily when it is asked for, and {@link CacheCfg#keepChangelogs} keeps it for next time.
 	 */
 	public static ChangelogAndNext calculateUsingCache(File changelogFile, NextVersionCfg cfg) throws IOException {
-		assertChangelogFileExists(changelogFile, cfg);
+		return calculateUsingCache(changelogFile, cfg, cache.cfg());
+	}
 
+	/**
+	 * Same as {@link #calculateUsingCache(File, NextVersionCfg)}, but uses the given cache configuration for this
+	 * call instead of the one set by {@link #setCacheCfg(CacheCfg)}, so that different callers in the same JVM
+	 * can configure the cache differently. The cache is still shared, so `maxEntries` and `timeToLive` apply to
+	 * everything in it when this call evicts.
+	 */
+	public static ChangelogAndNext calculateUsingCache(File changelogFile, NextVersionCfg cfg, CacheCfg cacheCfg) throws IOException {
+		VersionsCache.validate(cacheCfg);
+		CacheCfg cacheCfgCopy = cacheCfg.shallowCopy();
+		// when keying on the content, the bytes which were hashed are the bytes the versions are calculated from
+		ByteBuffer[] hashed = new ByteBuffer[1];
 		Input input = new Input();
-		input.changelogFile = FileSignature.sign(changelogFile);
+		input.changelogFile = cache.sign(changelogFile, cacheCfgCopy, () -> {
+			try {
+				if (cacheCfgCopy.keyOnContentHash) {
+					hashed[0] = read(changelogFile);
+					return FileSignature.signContent(changelogFile, hashed[0]);
+				} else {
+					return FileSignature.sign(changelogFile);
+				}
+			} catch (IOException e) {
+				// only check for the friendlier error once something has gone wrong
+				assertChangelogFileExists(changelogFile, cfg);
+				throw e;
+			}
+		});
 		input.cfgNextVersion = cfg;
-		Serialized<Input> inputActual = Serialized.fromValue(input);
 
-		Versions cachedVersions = cacheRead(inputActual);
-		if (cachedVersions == null) {
-			ChangelogAndNext model = calculate(changelogFile, cfg);
-			cacheStore(inputActual, model.versions());
-			return model;
-		} else {
-			return new ChangelogAndNext(Suppliers.memoize(Errors.rethrow().wrap(() -> {
-				return new Changelog(new String(Files.readAllBytes(changelogFile.toPath()), StandardCharsets.UTF_8));
-			})), cachedVersions);
-		}
+		Versions versions = cache.get(input, cacheCfgCopy, () -> {
+			ByteBuffer content = hashed[0] == null ? read(changelogFile) : hashed[0];
+			return calculate(content, changelogFile, cfg, input).versions();
+		});
+		// read again if it is asked for, so that the whole file isn't held for as long as the result lives
+		Supplier<Changelog> load = Errors.rethrow().wrap(() -> {
+			cache.stats.lazyChangelogLoads.increment();
+			ByteBuffer bytes = read(changelogFile);
+			return parse(() -> new Changelog(ChangelogBytes.decode(bytes)));
+		});
+		return new ChangelogAndNext(Suppliers.memoize(() -> cache.changelog(input.changelogFile, cacheCfgCopy, load)), versions);
 	}
 
-	private static Versions cacheRead(Serialized<Input> inputActual) {
-		synchronized (cache) {
-			Entry<Serialized<Input>, Versions> cached = cache.get(inputActual.value().changelogFile.canonicalPath());
-			if (cached != null && cached.getKey().equals(inputActual)) {
-				return cached.getValue();
-			} else {
-				return null;
-			}
-		}
+	/** Sets the size limit and time-to-live of the cache used by {@link #calculateUsingCache(File, NextVersionCfg)}, evicting whatever no longer fits. */
+	public static void setCacheCfg(CacheCfg cfg) {
+		cache.setCfg(cfg);
 	}
 
-	private static void cacheStore(Serialized<Input> inputActual, Versions versions) {
-		synchronized (cache) {
-			cache.put(inputActual.value().changelogFile.canonicalPath(), Maps.immutableEntry(inputActual, versions));
-		}
+	/** Returns a copy of the current configuration of the cache used by {@link #calculateUsingCache(File, NextVersionCfg)}. */
+	public static CacheCfg cacheCfg() {
+		return cache.cfg().shallowCopy();
+	}
+
+	/** Returns a snapshot of the statistics for {@link #calculateUsingCache(File, NextVersionCfg)}. */
+	public static CacheStats cacheStats() {
+		return cache.stats.snapshot();
+	}
+
+	/** Empties the cache used by {@link #calculateUsingCache(File, NextVersionCfg)}, and stops watching files. */
+	public static void clearCache() {
+		cache.clear();
+	}
+
+	/**
+	 * Stops watching files for {@link CacheCfg#watchFiles}, and releases the underlying {@link java.nio.file.WatchService}.
+	 * The cached versions are kept, and the next call which asks to watch files starts watching again.
+	 */
+	public static void stopWatchingFiles() {
+		cache.stopWatching();
 	}
 
-	static final Map<String, Entry<Serialized<Input>, Versions>> cache = new HashMap<>();
+	static final VersionsCache cache = new VersionsCache();
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2026 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.changelog;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Finds the structure of a changelog directly in its UTF-8 bytes. Every token
+ * the parser looks for is ASCII, and a `\n` byte is always a character boundary
+ * in UTF-8, so the bytes can be cut at a newline and only the part before the
+ * cut needs to be decoded. A `\r\n` needs no special handling, because every
+ * token which matters starts at the `\n`.
+ */
+final class ChangelogBytes {
+	private static final byte[] UNRELEASED = ascii("\n## [Unreleased]");
+	private static final byte[] VERSION_BEGIN = ascii("\n## [");
+	private static final byte[] DONT_PARSE_BELOW_HERE = ascii("\n<!-- END CHANGELOG -->");
+
+	/** Files at least this big are memory-mapped rather than read onto the heap. */
+	static final long MAP_AT_LEAST_BYTES = 1024 * 1024;
+	/** On Windows, a live mapping blocks the file from being replaced, which `changelogBump` needs to do. */
+	private static final boolean CAN_MAP = !System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+
+	private ChangelogBytes() {}
+
+	/**
+	 * Reads the content of the given file. Large files are memory-mapped, so the pages which
+	 * are never scanned or decoded (e.g. everything below the last published version when
+	 * only the versions are needed) are never read, and nothing is copied onto the heap
+	 * until it is decoded.
+	 */
+	static ByteBuffer read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (CAN_MAP && size >= MAP_AT_LEAST_BYTES && size <= Integer.MAX_VALUE) {
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			ByteBuffer content = ByteBuffer.allocate(Math.toIntExact(size));
+			while (content.hasRemaining() && channel.read(content) != -1) {
+				// keep reading
+			}
+			content.flip();
+			return content;
+		}
+	}
+
+	private static byte[] ascii(String token) {
+		return token.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Returns how many bytes from the start of the changelog {@link Changelog#parseVersionsOnly(String)}
+	 * needs to see, which is everything through the line of the first header after `## [Unreleased]`.
+	 * Returns the full length if there is no such header, so that error messages see everything.
+	 */
+	static int versionsOnlyLength(ByteBuffer content) {
+		int limit = content.limit();
+		int unreleased = indexOf(content, UNRELEASED, 0, limit);
+		if (unreleased == -1) {
+			return limit;
+		}
+		int versionLast = indexOf(content, VERSION_BEGIN, unreleased + 1, limit);
+		int end = versionLast == -1 ? limit : endOfLine(content, versionLast + 1, limit);
+		// if the changelog ends before the headers we need, the parser has to see where it ends
+		int dontParse = indexOf(content, DONT_PARSE_BELOW_HERE, 0, end);
+		return dontParse == -1 ? end : dontParse + DONT_PARSE_BELOW_HERE.length;
+	}
+
+	/** Decodes all of the given UTF-8 bytes. */
+	static String decode(ByteBuffer content) {
+		return decode(content, 0, content.limit());
+	}
+
+	/** Decodes the given range of UTF-8 bytes. */
+	static String decode(ByteBuffer content, int start, int end) {
+		if (content.hasArray()) {
+			return new String(content.array(), content.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+		} else {
+			ByteBuffer range = content.duplicate();
+			range.limit(end).position(start);
+			return StandardCharsets.UTF_8.decode(range).toString();
+		}
+	}
+
+	/** Returns the index just past the next `\n` at or after `from`, or `end` if there isn't one. */
+	private static int endOfLine(ByteBuffer content, int from, int end) {
+		for (int i = from; i < end; ++i) {
+			if (content.get(i) == '\n') {
+				return i + 1;
+			}
+		}
+		return end;
+	}
+
+	/** Returns the first index of `token` which starts in `[from, end)` and fits before the limit of `content`, or -1. */
+	private static int indexOf(ByteBuffer content, byte[] token, int from, int end) {
+		int lastStart = Math.min(end, content.limit() - token.length + 1);
+		byte first = token[0];
+		outer: for (int i = from; i < lastStart; ++i) {
+			if (content.get(i) != first) {
+				continue;
+			}
+			for (int j = 1; j < token.length; ++j) {
+				if (content.get(i + j) != token[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+}
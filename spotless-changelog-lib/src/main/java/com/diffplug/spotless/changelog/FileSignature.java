@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2020 DiffPlug
+ * Copyright (C) 2020-2026 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,30 +19,100 @@ package com.diffplug.spotless.changelog;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import pl.tlinkowski.annotation.basic.NullOr;
 
-/** Stores the canonical path and file metadata. */
+/** Stores the canonical path and file metadata, or the canonical path and a hash of the content. */
 final class FileSignature implements Serializable {
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 3L;
 
 	private final String filename;
 	@SuppressWarnings("unused")
 	private final long filesize;
+	/** In nanoseconds, or as precise as the filesystem gets. */
 	@SuppressWarnings("unused")
 	private final long lastModified;
+	/** Identifies the file itself (e.g. device and inode), so a replaced file is noticed, null if the platform doesn't have one. */
+	@SuppressWarnings("unused")
+	private final @NullOr String fileKey;
+	@SuppressWarnings("unused")
+	private final long contentHash;
 
-	/** Signs the given file. */
+	/** Signs the given file with a single read of its attributes. Throws {@link NoSuchFileException} unless it is a regular file. */
 	public static FileSignature sign(File file) throws IOException {
-		return new FileSignature(file);
+		BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		if (!attributes.isRegularFile()) {
+			throw new NoSuchFileException(file.getPath(), null, "not a regular file");
+		}
+		Object fileKey = attributes.fileKey();
+		return new FileSignature(canonicalPath(file), attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+				fileKey == null ? null : fileKey.toString(), 0);
+	}
+
+	/** Signs the given file by its content, ignoring when it was last modified. */
+	public static FileSignature signContent(File file, ByteBuffer content) throws IOException {
+		return new FileSignature(canonicalPath(file), content.remaining(), 0, null, contentHash(content));
 	}
 
-	private FileSignature(File file) throws IOException {
-		File canonical = file.getCanonicalFile();
-		filename = canonical.getAbsolutePath();
-		filesize = canonical.length();
-		lastModified = canonical.lastModified();
+	private FileSignature(String filename, long filesize, long lastModified, @NullOr String fileKey, long contentHash) {
+		this.filename = filename;
+		this.filesize = filesize;
+		this.lastModified = lastModified;
+		this.fileKey = fileKey;
+		this.contentHash = contentHash;
+	}
+
+	/** Canonicalizing takes a syscall per path segment, so it is only done once per file. */
+	private static final ConcurrentHashMap<File, String> canonicalPaths = new ConcurrentHashMap<>();
+	/** Keeps the memo from growing without limit in a long-lived process. */
+	private static final int MAX_CANONICAL_PATHS = 1024;
+
+	private static String canonicalPath(File file) throws IOException {
+		File absolute = file.getAbsoluteFile();
+		String canonical = canonicalPaths.get(absolute);
+		if (canonical == null) {
+			canonical = absolute.getCanonicalPath();
+			if (canonicalPaths.size() >= MAX_CANONICAL_PATHS) {
+				canonicalPaths.clear();
+			}
+			canonicalPaths.put(absolute, canonical);
+		}
+		return canonical;
+	}
+
+	/**
+	 * CRC32C and CRC32 are both hardware-accelerated on common platforms, and since they
+	 * use different polynomials, together they make a 64-bit hash. Feeding both one chunk
+	 * at a time means each chunk is only pulled from memory once.
+	 */
+	static long contentHash(ByteBuffer content) {
+		CRC32C crc32c = new CRC32C();
+		CRC32 crc32 = new CRC32();
+		int chunk = 64 * 1024;
+		ByteBuffer remaining = content.duplicate();
+		while (remaining.hasRemaining()) {
+			ByteBuffer slice = remaining.duplicate();
+			slice.limit(Math.min(remaining.limit(), remaining.position() + chunk));
+			crc32c.update(slice.duplicate());
+			crc32.update(slice);
+			remaining.position(slice.position());
+		}
+		return (crc32c.getValue() << 32) | crc32.getValue();
 	}
 
 	public String canonicalPath() {
 		return filename;
 	}
+
+	/** Adds everything about this signature to the given fingerprint. */
+	void addTo(Fingerprint.Builder fingerprint) {
+		fingerprint.putString(filename).putLong(filesize).putLong(lastModified).putString(fileKey).putLong(contentHash);
+	}
 }
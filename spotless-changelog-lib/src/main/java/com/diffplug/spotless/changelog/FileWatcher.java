@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2026 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.changelog;
+
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Remembers the signature of each changelog until a {@link WatchService} reports a change
+ * in its directory, so that an unchanged changelog can be signed without touching the
+ * filesystem at all. Events arrive asynchronously, so a change is noticed shortly after it
+ * happens rather than at the instant it happens.
+ */
+final class FileWatcher implements Closeable {
+	private final WatchService service;
+	private final ConcurrentHashMap<Path, Boolean> watchedDirs = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Path, Clean> clean = new ConcurrentHashMap<>();
+	/** Incremented under the lock of this object whenever events are processed. */
+	private long generation = 0;
+
+	private static final class Clean {
+		final FileSignature signature;
+		final Path file, canonicalFile;
+
+		Clean(FileSignature signature, Path file, Path canonicalFile) {
+			this.signature = signature;
+			this.file = file;
+			this.canonicalFile = canonicalFile;
+		}
+
+		boolean isAffectedBy(Path dir, @NullOr Path name) {
+			return isAffectedBy(file, dir, name) || isAffectedBy(canonicalFile, dir, name);
+		}
+
+		private static boolean isAffectedBy(Path file, Path dir, @NullOr Path name) {
+			return dir.equals(file.getParent()) && (name == null || name.equals(file.getFileName()));
+		}
+	}
+
+	private FileWatcher(WatchService service) {
+		this.service = service;
+	}
+
+	/**
+	 * Returns a watcher, or null if this platform can't watch files. The JDK falls back
+	 * to polling on some platforms (e.g. macOS), which can take seconds to notice a
+	 * change, so that counts as not being able to watch.
+	 */
+	static @NullOr FileWatcher create() {
+		WatchService service;
+		try {
+			service = FileSystems.getDefault().newWatchService();
+		} catch (IOException | UnsupportedOperationException e) {
+			return null;
+		}
+		if (service.getClass().getName().contains("Polling")) {
+			try {
+				service.close();
+			} catch (IOException e) {
+				// we weren't going to use it anyway
+			}
+			return null;
+		}
+		return new FileWatcher(service);
+	}
+
+	/**
+	 * Returns the remembered signature if nothing has changed in the file's directory since it was signed,
+	 * otherwise calls `sign` and remembers the result.
+	 */
+	FileSignature sign(File file, Callable<FileSignature> sign) throws IOException {
+		processEvents();
+		Path path = file.toPath().toAbsolutePath();
+		Clean remembered = clean.get(path);
+		if (remembered != null) {
+			return remembered.signature;
+		}
+		long generationBefore;
+		synchronized (this) {
+			generationBefore = generation;
+		}
+		// start watching before signing, so that no change can fall between the two
+		boolean watching = watch(path.getParent());
+		FileSignature signature;
+		try {
+			signature = sign.call();
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+		Path canonical = Paths.get(signature.canonicalPath());
+		if (watching && !canonical.equals(path)) {
+			watching = watch(canonical.getParent());
+		}
+		if (watching) {
+			synchronized (this) {
+				// if any events were processed in the meantime, they might have been about this file
+				if (generation == generationBefore) {
+					clean.put(path, new Clean(signature, path, canonical));
+				}
+			}
+		}
+		return signature;
+	}
+
+	private boolean watch(@NullOr Path dir) {
+		if (dir == null) {
+			return false;
+		} else if (watchedDirs.containsKey(dir)) {
+			return true;
+		}
+		try {
+			dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+			watchedDirs.put(dir, Boolean.TRUE);
+			return true;
+		} catch (IOException | UnsupportedOperationException | ClosedWatchServiceException e) {
+			return false;
+		}
+	}
+
+	/** Forgets the signature of every file in a directory which has reported a change. Doesn't block. */
+	private void processEvents() {
+		WatchKey key;
+		try {
+			key = service.poll();
+		} catch (ClosedWatchServiceException e) {
+			clean.clear();
+			return;
+		}
+		if (key == null) {
+			return;
+		}
+		synchronized (this) {
+			++generation;
+			while (key != null) {
+				Path dir = (Path) key.watchable();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					@NullOr
+					Path name = event.kind() == StandardWatchEventKinds.OVERFLOW ? null : (Path) event.context();
+					clean.values().removeIf(remembered -> remembered.isAffectedBy(dir, name));
+				}
+				if (!key.reset()) {
+					// the directory is gone
+					watchedDirs.remove(dir);
+					clean.values().removeIf(remembered -> remembered.isAffectedBy(dir, null));
+				}
+				key = service.poll();
+			}
+		}
+	}
+
+	/** Forgets every remembered signature. */
+	void clear() {
+		clean.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		clean.clear();
+		service.close();
+	}
+}
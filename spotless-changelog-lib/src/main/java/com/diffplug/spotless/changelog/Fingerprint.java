@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2026 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.changelog;
+
+
+import java.util.Arrays;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * A 128-bit hash which identifies a cache input, built by writing its fields directly
+ * into a small byte array and hashing that with MurmurHash3 (the x64 128-bit variant).
+ * Every variable-length value is prefixed by its length, so that different inputs can't
+ * produce the same bytes.
+ */
+final class Fingerprint {
+	static final int BYTES = 16;
+
+	private final long h1, h2;
+
+	private Fingerprint(long h1, long h2) {
+		this.h1 = h1;
+		this.h2 = h2;
+	}
+
+	static Builder builder() {
+		return new Builder();
+	}
+
+	/** The fingerprint of a single string. */
+	static Fingerprint of(String value) {
+		return builder().putString(value).build();
+	}
+
+	/** Returns the 16 bytes of this fingerprint. */
+	byte[] toBytes() {
+		byte[] bytes = new byte[BYTES];
+		Builder.putLongLE(bytes, 0, h1);
+		Builder.putLongLE(bytes, 8, h2);
+		return bytes;
+	}
+
+	/** The inverse of {@link #toBytes()}. */
+	static Fingerprint fromBytes(byte[] bytes) {
+		return new Fingerprint(getLongLE(bytes, 0), getLongLE(bytes, 8));
+	}
+
+	/** Returns the 32 lowercase hex digits of this fingerprint. */
+	String toHex() {
+		StringBuilder hex = new StringBuilder(2 * BYTES);
+		for (byte b : toBytes()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+			hex.append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other instanceof Fingerprint) {
+			Fingerprint o = (Fingerprint) other;
+			return h1 == o.h1 && h2 == o.h2;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(h1);
+	}
+
+	@Override
+	public String toString() {
+		return toHex();
+	}
+
+	/** Collects the fields of an input. */
+	static final class Builder {
+		private byte[] bytes = new byte[128];
+		private int size = 0;
+
+		private Builder() {}
+
+		Builder putBoolean(boolean value) {
+			ensureRoom(1);
+			bytes[size++] = (byte) (value ? 1 : 0);
+			return this;
+		}
+
+		Builder putInt(int value) {
+			ensureRoom(4);
+			for (int i = 0; i < 4; ++i) {
+				bytes[size++] = (byte) (value >>> (8 * i));
+			}
+			return this;
+		}
+
+		Builder putLong(long value) {
+			ensureRoom(8);
+			putLongLE(bytes, size, value);
+			size += 8;
+			return this;
+		}
+
+		/** Null is distinct from every string, including the empty one. */
+		Builder putString(@NullOr String value) {
+			if (value == null) {
+				return putInt(-1);
+			}
+			putInt(value.length());
+			ensureRoom(2 * value.length());
+			for (int i = 0; i < value.length(); ++i) {
+				char c = value.charAt(i);
+				bytes[size++] = (byte) c;
+				bytes[size++] = (byte) (c >>> 8);
+			}
+			return this;
+		}
+
+		Builder putBytes(byte[] value) {
+			putInt(value.length);
+			ensureRoom(value.length);
+			System.arraycopy(value, 0, bytes, size, value.length);
+			size += value.length;
+			return this;
+		}
+
+		private void ensureRoom(int needed) {
+			if (size + needed > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + needed));
+			}
+		}
+
+		Fingerprint build() {
+			return murmur3(bytes, size);
+		}
+
+		private static void putLongLE(byte[] bytes, int offset, long value) {
+			for (int i = 0; i < 8; ++i) {
+				bytes[offset + i] = (byte) (value >>> (8 * i));
+			}
+		}
+	}
+
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	/** MurmurHash3_x64_128 with a seed of zero. */
+	static Fingerprint murmur3(byte[] data, int length) {
+		long h1 = 0;
+		long h2 = 0;
+		int blocksEnd = length & ~15;
+		for (int i = 0; i < blocksEnd; i += 16) {
+			long k1 = getLongLE(data, i);
+			long k2 = getLongLE(data, i + 8);
+			h1 ^= mixK1(k1);
+			h1 = Long.rotateLeft(h1, 27) + h2;
+			h1 = h1 * 5 + 0x52dce729;
+			h2 ^= mixK2(k2);
+			h2 = Long.rotateLeft(h2, 31) + h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+		long k1 = 0;
+		long k2 = 0;
+		int tail = length - blocksEnd;
+		for (int i = Math.min(tail, 16) - 1; i >= 8; --i) {
+			k2 ^= (data[blocksEnd + i] & 0xFFL) << (8 * (i - 8));
+		}
+		for (int i = Math.min(tail, 8) - 1; i >= 0; --i) {
+			k1 ^= (data[blocksEnd + i] & 0xFFL) << (8 * i);
+		}
+		if (tail > 8) {
+			h2 ^= mixK2(k2);
+		}
+		if (tail > 0) {
+			h1 ^= mixK1(k1);
+		}
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix64(h1);
+		h2 = fmix64(h2);
+		h1 += h2;
+		h2 += h1;
+		return new Fingerprint(h1, h2);
+	}
+
+	private static long getLongLE(byte[] data, int offset) {
+		long value = 0;
+		for (int i = 7; i >= 0; --i) {
+			value = (value << 8) | (data[offset + i] & 0xFFL);
+		}
+		return value;
+	}
+
+	private static long mixK1(long k1) {
+		return Long.rotateLeft(k1 * C1, 31) * C2;
+	}
+
+	private static long mixK2(long k2) {
+		return Long.rotateLeft(k2 * C2, 33) * C1;
+	}
+
+	private static long fmix64(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+}
@@ -28,6 +28,12 @@ public class NextVersionCfg implements Serializable {
 	/** Whatever version is calculated (by function or force), append -SNAPSHOT. */
 	public boolean appendSnapshot = false;
 
+	/** Adds everything which determines the next version to the given fingerprint. */
+	void addTo(Fingerprint.Builder fingerprint) {
+		function.addTo(fingerprint);
+		fingerprint.putString(forceNextVersion).putBoolean(appendSnapshot);
+	}
+
 	/** Returns a shallow copy of this object. */
 	public NextVersionCfg shallowCopy() {
 		NextVersionCfg copy = new NextVersionCfg();
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2020 DiffPlug
+ * Copyright (C) 2020-2026 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,15 +18,15 @@ package com.diffplug.spotless.changelog;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import org.osgi.framework.Version;
 
 /**
  * Function which defines the logic for implementing a version schema.
  * If you want to make a custom function, you can either override
  * {@link Semver}, or you can override {@link NonSemver}.  The advantage
- * of {@link Semver} is that you can use the `ifFoundBumpXXX` methods.
+ * of {@link Semver} is that you can use the `ifFoundBumpXXX` and `ifSectionBumpXXX` methods.
  * See {@link SemverBrandPrefix} or {@link SemverCondense_XY0_to_XY} for a simple example.
  * 
  * If you have any methods for configuring your function besides those, you
@@ -51,6 +51,36 @@ public abstract class NextVersionFunction implements Serializable {
 	/** Optional API, used for subclasses of {@link Semver}, throws runtime error for subclasses of {@link NonSemver}. */
 	public abstract void ifFoundBumpAdded(List<String> toFind);
 
+	/**
+	 * Adds everything which determines the result of this function to the given fingerprint. The built-in
+	 * functions are fingerprinted field-by-field, anything else falls back to its serialized bytes.
+	 */
+	void addTo(Fingerprint.Builder fingerprint) {
+		fingerprint.putString(getClass().getName());
+		if (isBuiltIn()) {
+			// SemverBrandPrefix.brand is only an output of the calculation, so it doesn't count
+			Semver semver = (Semver) this;
+			putStrings(fingerprint, semver.ifFoundBumpBreaking);
+			putStrings(fingerprint, semver.ifFoundBumpAdded);
+			putStrings(fingerprint, semver.ifSectionBumpBreaking);
+			putStrings(fingerprint, semver.ifSectionBumpAdded);
+		} else {
+			fingerprint.putBytes(Serialized.fromValue(this).bytes());
+		}
+	}
+
+	/** True for the functions in this file, which are safe to share between threads, unlike subclasses we know nothing about. */
+	boolean isBuiltIn() {
+		return getClass() == Semver.class || getClass() == SemverBrandPrefix.class || getClass() == SemverCondense_XY0_to_XY.class;
+	}
+
+	private static void putStrings(Fingerprint.Builder fingerprint, List<String> strings) {
+		fingerprint.putInt(strings.size());
+		for (String string : strings) {
+			fingerprint.putString(string);
+		}
+	}
+
 	/** Optional API, used for subclasses of {@link Semver}, throws runtime error for subclasses of {@link NonSemver}. */
 	public abstract void ifFoundBumpBreaking(List<String> toFind);
 
@@ -64,6 +94,22 @@ public abstract class NextVersionFunction implements Serializable {
 		ifFoundBumpAdded(Arrays.asList(toFind));
 	}
 
+	/** Optional API, used for subclasses of {@link Semver}, throws runtime error for subclasses of {@link NonSemver}. */
+	public abstract void ifSectionBumpBreaking(List<String> headings);
+
+	/** Optional API, used for subclasses of {@link Semver}, throws runtime error for subclasses of {@link NonSemver}. */
+	public abstract void ifSectionBumpAdded(List<String> headings);
+
+	/** Optional API, used for subclasses of {@link Semver}, throws runtime error for subclasses of {@link NonSemver}. */
+	public final void ifSectionBumpBreaking(String... headings) {
+		ifSectionBumpBreaking(Arrays.asList(headings));
+	}
+
+	/** Optional API, used for subclasses of {@link Semver}, throws runtime error for subclasses of {@link NonSemver}. */
+	public final void ifSectionBumpAdded(String... headings) {
+		ifSectionBumpAdded(Arrays.asList(headings));
+	}
+
 	/**
 	 * Base class for {@link NextVersionFunction} for the unusual case that 
 	 * {@link #ifFoundBumpAdded(List)} and {@link #ifFoundBumpBreaking(List)} are not supported.
@@ -80,12 +126,29 @@ public abstract class NextVersionFunction implements Serializable {
 		public void ifFoundBumpAdded(List<String> toFind) {
 			throw new IllegalArgumentException(getClass() + " does not support `breaking.added.fixed`.");
 		}
+
+		@Override
+		@Deprecated
+		public void ifSectionBumpBreaking(List<String> headings) {
+			throw new IllegalArgumentException(getClass() + " does not support `breaking.added.fixed`.");
+		}
+
+		@Override
+		@Deprecated
+		public void ifSectionBumpAdded(List<String> headings) {
+			throw new IllegalArgumentException(getClass() + " does not support `breaking.added.fixed`.");
+		}
 	}
 
 	/** Standard semver behavior. */
 	public static class Semver extends NextVersionFunction {
 		protected List<String> ifFoundBumpBreaking = Arrays.asList("**BREAKING**");
 		protected List<String> ifFoundBumpAdded = Arrays.asList("### Added");
+		/** Headings of `### ` sections which bump if they have anything in them, e.g. `Added`, empty by default. */
+		protected List<String> ifSectionBumpBreaking = Collections.emptyList();
+		protected List<String> ifSectionBumpAdded = Collections.emptyList();
+		/** Compiled from the lists above when first needed, and again whenever they change. */
+		private transient volatile BumpMatcher bumpMatcher;
 
 		@Override
 		public void ifFoundBumpBreaking(List<String> toFind) {
@@ -97,28 +160,67 @@ public abstract class NextVersionFunction implements Serializable {
 			ifFoundBumpAdded = Objects.requireNonNull(toFind);
 		}
 
+		@Override
+		public void ifSectionBumpBreaking(List<String> headings) {
+			ifSectionBumpBreaking = Objects.requireNonNull(headings);
+		}
+
+		@Override
+		public void ifSectionBumpAdded(List<String> headings) {
+			ifSectionBumpAdded = Objects.requireNonNull(headings);
+		}
+
 		@Override
 		protected String nextVersion(String unreleasedChanges, String lastVersion) {
-			Version last = Version.parseVersion(lastVersion);
-			if (last.getMajor() == 0) {
-				boolean bumpMinor = ifFoundBumpBreaking.stream().anyMatch(unreleasedChanges::contains) ||
-						ifFoundBumpAdded.stream().anyMatch(unreleasedChanges::contains);
-				if (bumpMinor) {
-					return "0." + (last.getMinor() + 1) + ".0";
+			// the pre-release and build metadata of the last version don't affect the next one
+			VersionNumber last = new VersionNumber().parse(lastVersion);
+			int major = last.major, minor = last.minor, micro = last.micro;
+			if (major == 0) {
+				// before 1.0, breaking changes only bump the minor version, so any bump will do
+				if (highestBump(unreleasedChanges, BumpMatcher.ADDED) != BumpMatcher.NONE) {
+					++minor;
+					micro = 0;
 				} else {
-					return "0." + last.getMinor() + "." + (last.getMicro() + 1);
+					++micro;
 				}
 			} else {
-				boolean bumpMajor = ifFoundBumpBreaking.stream().anyMatch(unreleasedChanges::contains);
-				if (bumpMajor) {
-					return (last.getMajor() + 1) + ".0.0";
+				int bump = highestBump(unreleasedChanges, BumpMatcher.BREAKING);
+				if (bump == BumpMatcher.BREAKING) {
+					++major;
+					minor = 0;
+					micro = 0;
+				} else if (bump == BumpMatcher.ADDED) {
+					++minor;
+					micro = 0;
+				} else {
+					++micro;
 				}
-				boolean bumpMinor = ifFoundBumpAdded.stream().anyMatch(unreleasedChanges::contains);
-				if (bumpMinor) {
-					return last.getMajor() + "." + (last.getMinor() + 1) + ".0";
+			}
+			return VersionNumber.appendTo(new StringBuilder(lastVersion.length() + 1), major, minor, micro).toString();
+		}
+
+		/** The highest bump from either the strings found or the sections which aren't empty, stopping early once it is `enough`. */
+		private int highestBump(String unreleasedChanges, int enough) {
+			int bump = bumpMatcher().highestBump(unreleasedChanges, enough);
+			if (bump < enough && !(ifSectionBumpBreaking.isEmpty() && ifSectionBumpAdded.isEmpty())) {
+				UnreleasedSections sections = UnreleasedSections.parse(unreleasedChanges);
+				if (ifSectionBumpBreaking.stream().anyMatch(sections::isNonEmpty)) {
+					bump = BumpMatcher.BREAKING;
+				} else if (ifSectionBumpAdded.stream().anyMatch(sections::isNonEmpty)) {
+					bump = Math.max(bump, BumpMatcher.ADDED);
 				}
-				return last.getMajor() + "." + last.getMinor() + "." + (last.getMicro() + 1);
 			}
+			return bump;
+		}
+
+		/** The lists are protected and mutable, so they are checked against what was compiled each time. */
+		private BumpMatcher bumpMatcher() {
+			BumpMatcher matcher = bumpMatcher;
+			if (matcher == null || !matcher.isCompiledFrom(ifFoundBumpBreaking, ifFoundBumpAdded)) {
+				matcher = BumpMatcher.compile(ifFoundBumpBreaking, ifFoundBumpAdded);
+				bumpMatcher = matcher;
+			}
+			return matcher;
 		}
 	}
 
@@ -133,7 +235,9 @@ public abstract class NextVersionFunction implements Serializable {
 		@Override
 		protected String nextVersion(String unreleasedChanges, String lastVersion) {
 			int brandDot = lastVersion.indexOf('.');
-			brand = Integer.parseInt(lastVersion.substring(0, brandDot));
+			// read back from a local, in case another thread is calculating with this same instance
+			int brand = Integer.parseInt(lastVersion.substring(0, brandDot));
+			this.brand = brand;
 			String result = super.nextVersion(unreleasedChanges, lastVersion.substring(brandDot + 1));
 			return brand + "." + result;
 		}
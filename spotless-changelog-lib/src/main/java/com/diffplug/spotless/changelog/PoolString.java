@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2019-2020 DiffPlug
+ * Copyright (C) 2019-2026 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,10 +17,15 @@ package com.diffplug.spotless.changelog;
 
 
 import com.diffplug.common.base.Preconditions;
+import java.util.Arrays;
+import java.util.List;
+import pl.tlinkowski.annotation.basic.NullOr;
 
 /** A CharSequence which can efficiently subdivide and append itself. */
 class PoolString implements CharSequence, java.io.Serializable {
-	private final CharSequence base;
+	private final String base;
+	/** Null when the base was built by concatenating non-contiguous PoolStrings. */
+	private final @NullOr NewlineIndex newlines;
 	private final int startIndex, endIndex;
 
 	public static PoolString of(String base) {
@@ -31,18 +36,18 @@ class PoolString implements CharSequence, java.io.Serializable {
 		if (startIndex == endIndex) {
 			return empty;
 		} else {
-			return new PoolString(base, startIndex, endIndex);
+			return new PoolString(base, new NewlineIndex(), startIndex, endIndex);
 		}
 	}
 
-	private static final PoolString empty = new PoolString("", 0, 0);
+	private static final PoolString empty = new PoolString("", new NewlineIndex(), 0, 0);
 
-	private PoolString(CharSequence base, int startIndex, int endIndex) {
-		//Preconditions.checkArgument(base instanceof StringBuilder || base instanceof String);
+	private PoolString(String base, @NullOr NewlineIndex newlines, int startIndex, int endIndex) {
 		Preconditions.checkArgument(0 <= startIndex);
 		Preconditions.checkArgument(startIndex <= endIndex);
 		Preconditions.checkArgument(endIndex <= base.length());
 		this.base = base;
+		this.newlines = newlines;
 		this.startIndex = startIndex;
 		this.endIndex = endIndex;
 	}
@@ -62,12 +67,12 @@ class PoolString implements CharSequence, java.io.Serializable {
 		if (start == end) {
 			return empty();
 		}
-		return new PoolString(base, startIndex + start, startIndex + end);
+		return new PoolString(base, newlines, startIndex + start, startIndex + end);
 	}
 
 	@Override
 	public String toString() {
-		return base.subSequence(startIndex, endIndex).toString();
+		return base.substring(startIndex, endIndex);
 	}
 
 	public PoolString concat(PoolString other) {
@@ -76,56 +81,53 @@ class PoolString implements CharSequence, java.io.Serializable {
 		} else if (other == empty) {
 			return this;
 		} else if (base == other.base && endIndex == other.startIndex) {
-			return new PoolString(base, startIndex, other.endIndex);
+			return new PoolString(base, newlines, startIndex, other.endIndex);
 		} else {
-			StringBuilder builder;
-			int start, end;
-			if (base instanceof StringBuilder) {
-				builder = (StringBuilder) base;
-				start = startIndex;
-				end = endIndex + other.length();
-			} else {
-				builder = new StringBuilder(length() + other.length());
-				builder.append(this);
-				start = 0;
-				end = length() + other.length();
-			}
-			builder.append(other);
-			return new PoolString(builder, start, end);
+			return join(Arrays.asList(this, other));
 		}
 	}
 
 	public PoolString concat(String other) {
-		if (base instanceof String && (endIndex + other.length() <= base.length())) {
-			String base = (String) this.base;
+		if (endIndex + other.length() <= base.length()) {
 			for (int i = 0; i < other.length(); ++i) {
 				if (base.charAt(i + endIndex) != other.charAt(i)) {
 					return concat(of(other));
 				}
 			}
-			return new PoolString(base, startIndex, endIndex + other.length());
+			return new PoolString(base, newlines, startIndex, endIndex + other.length());
 		}
 		return concat(of(other));
 	}
 
 	public static PoolString concat(CharSequence... poolStringsOrStrings) {
-		if (poolStringsOrStrings.length == 0) {
+		return join(Arrays.asList(poolStringsOrStrings));
+	}
+
+	/**
+	 * Concatenates the given PoolStrings and Strings. The total length is measured first, so that
+	 * the result is filled into a single array sized exactly to it, rather than being copied once per piece.
+	 * The result has no connection to the original Strings, so it can't report line numbers.
+	 */
+	public static PoolString join(List<? extends CharSequence> poolStringsOrStrings) {
+		int length = 0;
+		for (CharSequence piece : poolStringsOrStrings) {
+			length += piece.length();
+		}
+		if (length == 0) {
 			return empty;
 		}
-		PoolString total = asPool(poolStringsOrStrings[0]);
-		for (int i = 1; i < poolStringsOrStrings.length; ++i) {
-			CharSequence next = poolStringsOrStrings[i];
-			if (next instanceof String) {
-				total = total.concat((String) next);
+		char[] chars = new char[length];
+		int filled = 0;
+		for (CharSequence piece : poolStringsOrStrings) {
+			if (piece instanceof PoolString) {
+				PoolString pool = (PoolString) piece;
+				pool.base.getChars(pool.startIndex, pool.endIndex, chars, filled);
 			} else {
-				total = total.concat((PoolString) next);
+				((String) piece).getChars(0, piece.length(), chars, filled);
 			}
+			filled += piece.length();
 		}
-		return total;
-	}
-
-	private static PoolString asPool(CharSequence sequence) {
-		return sequence instanceof PoolString ? ((PoolString) sequence) : PoolString.of((String) sequence);
+		return new PoolString(new String(chars), null, 0, length);
 	}
 
 	public boolean sameAs(CharSequence other) {
@@ -166,12 +168,12 @@ class PoolString implements CharSequence, java.io.Serializable {
 	}
 
 	public int indexOf(String lookingFor) {
-		int result;
-		if (base instanceof String) {
-			result = ((String) base).indexOf(lookingFor, startIndex);
-		} else {
-			result = ((StringBuilder) base).indexOf(lookingFor, startIndex);
-		}
+		return indexOf(lookingFor, 0);
+	}
+
+	/** Returns the index of the first `lookingFor` at or after `fromIndex`, or -1. */
+	public int indexOf(String lookingFor, int fromIndex) {
+		int result = base.indexOf(lookingFor, startIndex + fromIndex);
 		if (result == -1 || result >= endIndex) {
 			return -1;
 		} else {
@@ -180,12 +182,12 @@ class PoolString implements CharSequence, java.io.Serializable {
 	}
 
 	public int indexOf(char lookingFor) {
-		int result;
-		if (base instanceof String) {
-			result = ((String) base).indexOf(lookingFor, startIndex);
-		} else {
-			result = ((StringBuilder) base).indexOf(String.valueOf(lookingFor), startIndex);
-		}
+		return indexOf(lookingFor, 0);
+	}
+
+	/** Returns the index of the first `lookingFor` at or after `fromIndex`, or -1. */
+	public int indexOf(char lookingFor, int fromIndex) {
+		int result = base.indexOf(lookingFor, startIndex + fromIndex);
 		if (result == -1 || result >= endIndex) {
 			return -1;
 		} else {
@@ -223,7 +225,24 @@ class PoolString implements CharSequence, java.io.Serializable {
 			return empty;
 		}
 		Preconditions.checkArgument(other.endIndex < endIndex);
-		return new PoolString(base, other.endIndex, endIndex);
+		return new PoolString(base, newlines, other.endIndex, endIndex);
+	}
+
+	/** Returns true if this is a part of the given PoolString, rather than a copy or a concatenation. */
+	public boolean isSliceOf(PoolString whole) {
+		return base == whole.base && whole.startIndex <= startIndex && endIndex <= whole.endIndex;
+	}
+
+	/** Returns the offset of the start of this string within the given PoolString (see {@link #isSliceOf(PoolString)}). */
+	public int startIn(PoolString whole) {
+		Preconditions.checkArgument(isSliceOf(whole));
+		return startIndex - whole.startIndex;
+	}
+
+	/** Returns the offset of the end of this string within the given PoolString (see {@link #isSliceOf(PoolString)}). */
+	public int endIn(PoolString whole) {
+		Preconditions.checkArgument(isSliceOf(whole));
+		return endIndex - whole.startIndex;
 	}
 
 	/**
@@ -247,18 +266,9 @@ class PoolString implements CharSequence, java.io.Serializable {
 	}
 
 	private int baseLineNumberOfOffset(int idx) {
-		assertStringBased();
-		int lineNumber = 1;
-		for (int i = 0; i < base.length(); ++i) {
-			if (base.charAt(i) == '\n') {
-				++lineNumber;
-			}
-		}
-		return lineNumber;
-	}
-
-	private void assertStringBased() {
-		Preconditions.checkArgument(base instanceof String, "When you call concat on non-contiguous parts, you lose the conneciton to the original String.");
+		NewlineIndex newlines = this.newlines;
+		Preconditions.checkArgument(newlines != null, "When you call concat on non-contiguous parts, you lose the conneciton to the original String.");
+		return newlines.lineNumberOf(base, idx);
 	}
 
 	/** Returns the empty PoolString. */
@@ -269,4 +279,38 @@ class PoolString implements CharSequence, java.io.Serializable {
 	public boolean isEmpty() {
 		return length() == 0;
 	}
+
+	/**
+	 * The offset of every newline in a base string, built the first time a line number is needed
+	 * and then shared by every PoolString on that base, so that each lookup is a binary search.
+	 */
+	private static final class NewlineIndex implements java.io.Serializable {
+		private transient volatile @NullOr int[] offsets;
+
+		/** Returns the 1-based line number of the given offset, which is one more than the number of newlines before it. */
+		int lineNumberOf(String base, int idx) {
+			int[] offsets = this.offsets;
+			if (offsets == null) {
+				offsets = build(base);
+				this.offsets = offsets;
+			}
+			int insertion = Arrays.binarySearch(offsets, idx);
+			int newlinesBefore = insertion >= 0 ? insertion : -(insertion + 1);
+			return newlinesBefore + 1;
+		}
+
+		private static int[] build(String base) {
+			int[] offsets = new int[16];
+			int count = 0;
+			for (int i = 0; i < base.length(); ++i) {
+				if (base.charAt(i) == '\n') {
+					if (count == offsets.length) {
+						offsets = Arrays.copyOf(offsets, count * 2);
+					}
+					offsets[count++] = i;
+				}
+			}
+			return Arrays.copyOf(offsets, count);
+		}
+	}
 }
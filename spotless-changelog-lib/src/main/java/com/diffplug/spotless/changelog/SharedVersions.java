@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2026 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.changelog;
+
+
+import com.diffplug.spotless.changelog.ChangelogAndNext.Versions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Shares calculated versions through the {@link CacheCfg#sharedVersions} map, which copies of this library
+ * loaded by different classloaders can all use, since it only holds JDK types. Whoever creates the map decides
+ * how long it lives, e.g. the Gradle plugin keeps one for each build.
+ *
+ * The key has the {@link VersionsCache#library() library fingerprint} and the path, so that two different
+ * releases of the library never share versions. Each value is the {@link System#nanoTime()} of its last use,
+ * the input fingerprint, then the next version, then the last version if there is one, separated by newlines,
+ * which can't appear in a version. When there are more than `maxEntries`, the least recently used go first.
+ */
+final class SharedVersions implements VersionsCache.Tier {
+	private final ConcurrentMap<String, String> shared;
+	private final int maxEntries;
+
+	SharedVersions(ConcurrentMap<String, String> shared, int maxEntries) {
+		this.shared = shared;
+		this.maxEntries = maxEntries;
+	}
+
+	@Override
+	public @NullOr Versions read(String canonicalPath, Fingerprint input) {
+		String key = keyFor(canonicalPath);
+		String value = shared.get(key);
+		if (value == null) {
+			return null;
+		}
+		String[] parts = value.split("\n", -1);
+		if (parts.length < 3 || parts.length > 4 || !parts[1].equals(input.toHex())) {
+			return null;
+		}
+		String last = parts.length == 4 ? parts[3] : null;
+		// if someone else changed it in the meantime, their access is just as recent
+		shared.replace(key, value, format(input, parts[2], last));
+		return new Versions(parts[2], last);
+	}
+
+	@Override
+	public void write(String canonicalPath, Fingerprint input, Versions versions) {
+		String key = keyFor(canonicalPath);
+		shared.put(key, format(input, versions.next(), versions.last()));
+		if (shared.size() <= maxEntries) {
+			return;
+		}
+		// every copy of the library trims the same map, so they all lock the map itself
+		synchronized (shared) {
+			List<String> keys = new ArrayList<>(shared.keySet());
+			keys.remove(key);
+			keys.sort(Comparator.comparingLong(other -> lastUsed(shared.get(other))));
+			for (int i = 0; i < keys.size() + 1 - maxEntries; ++i) {
+				shared.remove(keys.get(i));
+			}
+		}
+	}
+
+	private static String format(Fingerprint input, String next, @NullOr String last) {
+		return System.nanoTime() + "\n" + input.toHex() + "\n" + next + (last == null ? "" : "\n" + last);
+	}
+
+	/** The time an entry was last used, anything we can't parse goes first. */
+	private static long lastUsed(@NullOr String value) {
+		if (value != null) {
+			int end = value.indexOf('\n');
+			try {
+				return Long.parseLong(end == -1 ? value : value.substring(0, end));
+			} catch (NumberFormatException e) {
+				// fall through
+			}
+		}
+		return Long.MIN_VALUE;
+	}
+
+	private static String keyFor(String canonicalPath) {
+		return VersionsCache.library().toHex() + "." + Fingerprint.of(canonicalPath).toHex();
+	}
+}
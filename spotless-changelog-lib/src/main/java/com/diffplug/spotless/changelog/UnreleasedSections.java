@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2026 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.changelog;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * An index of the `### ` sections in the unreleased changes, built in one pass over the text so
+ * that every question after that is a map lookup. Only a `### ` at the start of a line and outside
+ * of a fenced code block starts a section, so quoting a heading doesn't create one.
+ */
+public final class UnreleasedSections {
+	/** The line range of one section, in the order they appear. */
+	private static final class Section {
+		final List<int[]> ranges = new ArrayList<>(1);
+		boolean nonEmpty;
+	}
+
+	private final String changes;
+	private final LinkedHashMap<String, Section> sections = new LinkedHashMap<>();
+
+	private UnreleasedSections(String changes) {
+		this.changes = changes;
+		Section current = null;
+		int[] range = null;
+		char fence = 0;
+		int start = 0;
+		while (true) {
+			int newline = changes.indexOf('\n', start);
+			int end = newline == -1 ? changes.length() : newline;
+			int next = newline == -1 ? end : end + 1;
+			int firstChar = skipSpaces(changes, start, end);
+			boolean blank = firstChar == end;
+			if (fence == 0 && changes.startsWith("### ", start)) {
+				String heading = changes.substring(start + 4, end).trim();
+				current = sections.computeIfAbsent(heading, unused -> new Section());
+				range = new int[]{next, next};
+				current.ranges.add(range);
+			} else if (fence == 0 && isHigherHeading(changes, start, end)) {
+				// a higher-level heading ends the section
+				current = null;
+				range = null;
+			} else {
+				if (!blank && (changes.startsWith("```", firstChar) || changes.startsWith("~~~", firstChar))) {
+					char marker = changes.charAt(firstChar);
+					fence = fence == 0 ? marker : fence == marker ? 0 : fence;
+				}
+				if (current != null) {
+					current.nonEmpty |= !blank;
+					range[1] = next;
+				}
+			}
+			if (newline == -1) {
+				break;
+			}
+			start = next;
+		}
+	}
+
+	/** True for a `# ` or `## ` heading, but not for text which merely starts with `#`, such as `#123`. */
+	private static boolean isHigherHeading(String text, int start, int end) {
+		int hashes = 0;
+		while (start + hashes < end && text.charAt(start + hashes) == '#') {
+			++hashes;
+		}
+		if (hashes == 0 || hashes > 2) {
+			return false;
+		}
+		int after = start + hashes;
+		return after == end || text.charAt(after) == ' ' || text.charAt(after) == '\t';
+	}
+
+	private static int skipSpaces(String text, int start, int end) {
+		while (start < end && Character.isWhitespace(text.charAt(start))) {
+			++start;
+		}
+		return start;
+	}
+
+	/** Indexes the given unreleased changes, see {@link Changelog#unreleasedChanges()}. */
+	public static UnreleasedSections parse(String unreleasedChanges) {
+		return new UnreleasedSections(unreleasedChanges);
+	}
+
+	/** The text of every `### ` heading, without the `### `, in the order they first appear. */
+	public Set<String> headings() {
+		return Collections.unmodifiableSet(sections.keySet());
+	}
+
+	/** True if there is a `### ` section with this heading, e.g. `Added`, which has anything besides blank lines. */
+	public boolean isNonEmpty(String heading) {
+		Section section = sections.get(heading);
+		return section != null && section.nonEmpty;
+	}
+
+	/** The content of the section with this heading, or null if there isn't one. A heading which appears twice has both of its sections. */
+	public @NullOr String content(String heading) {
+		Section section = sections.get(heading);
+		if (section == null) {
+			return null;
+		}
+		StringBuilder content = new StringBuilder();
+		for (int[] range : section.ranges) {
+			content.append(changes, range[0], range[1]);
+		}
+		return content.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<String, Section> entry : sections.entrySet()) {
+			builder.append(builder.length() == 0 ? "" : ", ").append(entry.getKey()).append(entry.getValue().nonEmpty ? "" : " (empty)");
+		}
+		return "UnreleasedSections[" + builder + "]";
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2026 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.changelog;
+
+
+/**
+ * A `major.minor.micro` version, parsed directly from the characters of a string into primitive
+ * fields. The optional pre-release (`-rc.1`) and build metadata (`+sha.5114f85`) are kept as
+ * offsets into the parsed characters, so parsing allocates nothing beyond the instance itself,
+ * no strings or token arrays. Like the OSGi versions which were parsed here before, a missing
+ * minor or micro counts as 0, and a `.qualifier` is accepted in place of the pre-release.
+ *
+ * Each call to `parse` overwrites every field, but {@link NextVersionFunction.Semver} still creates
+ * a fresh instance for each version, since keeping one per thread would pin this library's
+ * classloader to long-lived threads such as a Gradle daemon's.
+ */
+final class VersionNumber {
+	int major, minor, micro;
+	/** The pre-release or OSGi qualifier, without its leading `-` or `.`, or -1 if there isn't one. */
+	int preReleaseStart, preReleaseEnd;
+	/** The build metadata, without its leading `+`, or -1 if there isn't any. */
+	int buildStart, buildEnd;
+
+	/** Parses the given version, throwing {@link IllegalArgumentException} if it is malformed. */
+	VersionNumber parse(CharSequence chars) {
+		return parse(chars, 0, chars.length());
+	}
+
+	/** Parses the version in `[start, end)` of the given characters, ignoring surrounding whitespace. */
+	VersionNumber parse(CharSequence chars, int start, int end) {
+		while (start < end && Character.isWhitespace(chars.charAt(start))) {
+			++start;
+		}
+		while (end > start && Character.isWhitespace(chars.charAt(end - 1))) {
+			--end;
+		}
+		major = minor = micro = 0;
+		preReleaseStart = preReleaseEnd = buildStart = buildEnd = -1;
+		if (start == end) {
+			return this;
+		}
+		int i = start;
+		for (int part = 0; part < 3; ++part) {
+			int numberStart = i;
+			int value = 0;
+			while (i < end && isDigit(chars.charAt(i))) {
+				int digit = chars.charAt(i++) - '0';
+				if (value > (Integer.MAX_VALUE - digit) / 10) {
+					throw invalid(chars, start, end, "number is too large");
+				}
+				value = value * 10 + digit;
+			}
+			if (i == numberStart) {
+				throw invalid(chars, start, end, "expected a number at index " + (i - start));
+			}
+			if (part == 0) {
+				major = value;
+			} else if (part == 1) {
+				minor = value;
+			} else {
+				micro = value;
+			}
+			if (i == end || part == 2 || chars.charAt(i) != '.') {
+				break;
+			}
+			++i;
+		}
+		// a '.' is only left over after the micro version, where it starts an OSGi qualifier
+		if (i < end && (chars.charAt(i) == '-' || chars.charAt(i) == '.')) {
+			preReleaseStart = ++i;
+			while (i < end && isIdentifier(chars.charAt(i))) {
+				++i;
+			}
+			preReleaseEnd = i;
+			if (preReleaseStart == preReleaseEnd) {
+				throw invalid(chars, start, end, "empty pre-release");
+			}
+		}
+		if (i < end && chars.charAt(i) == '+') {
+			buildStart = ++i;
+			while (i < end && isIdentifier(chars.charAt(i))) {
+				++i;
+			}
+			buildEnd = i;
+			if (buildStart == buildEnd) {
+				throw invalid(chars, start, end, "empty build metadata");
+			}
+		}
+		if (i < end) {
+			throw invalid(chars, start, end, "unexpected '" + chars.charAt(i) + "' at index " + (i - start));
+		}
+		return this;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isIdentifier(char c) {
+		return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '-' || c == '.' || c == '_';
+	}
+
+	private static IllegalArgumentException invalid(CharSequence chars, int start, int end, String reason) {
+		return new IllegalArgumentException("invalid version \"" + chars.subSequence(start, end) + "\": " + reason);
+	}
+
+	/** Appends `major.minor.micro` to the given builder, and returns it. */
+	static StringBuilder appendTo(StringBuilder builder, int major, int minor, int micro) {
+		return builder.append(major).append('.').append(minor).append('.').append(micro);
+	}
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2026 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.changelog;
+
+
+import com.diffplug.common.base.Preconditions;
+import com.diffplug.spotless.changelog.ChangelogAndNext.Input;
+import com.diffplug.spotless.changelog.ChangelogAndNext.Versions;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.ref.SoftReference;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * A bounded cache from the canonical path of a changelog to the versions which were calculated from it.
+ * Different changelogs never contend with each other, and threads which ask for the same changelog at
+ * the same time share a single calculation. Eviction is least-recently-used, but only approximately,
+ * since concurrent reads don't coordinate their access times.
+ */
+final class VersionsCache {
+	private volatile CacheCfg cfg = new CacheCfg();
+	final CacheStats.Counter stats = new CacheStats.Counter();
+	private final ConcurrentHashMap<String, Cached> cache = new ConcurrentHashMap<>();
+	/** The optional second tier, see {@link CacheCfg#keepChangelogs}. */
+	private final ConcurrentHashMap<String, SoftChangelog> changelogs = new ConcurrentHashMap<>();
+	/** The most recent versions for each changelog, see {@link Versions#key()}. */
+	private final ConcurrentHashMap<String, Versions> memoized = new ConcurrentHashMap<>();
+	/** Created when a call first asks for {@link CacheCfg#watchFiles}, if the platform supports it. */
+	private volatile @NullOr FileWatcher watcher;
+	/** True once we know the platform can't watch files. */
+	private volatile boolean watchUnsupported;
+	/** Only one thread evicts at a time, the others don't wait for it. */
+	private final ReentrantLock evicting = new ReentrantLock();
+
+	/** A place to keep versions outside of this cache, such as {@link VersionsStore} or {@link SharedVersions}. */
+	interface Tier {
+		/** Returns the versions stored for exactly this input, or null if there aren't any. */
+		@NullOr
+		Versions read(String canonicalPath, Fingerprint input);
+
+		/** Stores the versions for this input, replacing whatever was stored for the same changelog. */
+		void write(String canonicalPath, Fingerprint input, Versions versions);
+	}
+
+	private static final class Cached {
+		final Fingerprint input;
+		final FutureTask<Versions> versions;
+		final long storedAtNanos;
+		volatile long accessedAtNanos;
+
+		Cached(Fingerprint input, FutureTask<Versions> versions, long storedAtNanos) {
+			this.input = input;
+			this.versions = versions;
+			this.storedAtNanos = storedAtNanos;
+			this.accessedAtNanos = storedAtNanos;
+		}
+	}
+
+	private static final class SoftChangelog extends SoftReference<Changelog> {
+		final Fingerprint file;
+
+		SoftChangelog(Fingerprint file, Changelog changelog) {
+			super(changelog);
+			this.file = file;
+		}
+	}
+
+	/** Identifies the code which calculates versions, so that versions from another release of this library are never reused. */
+	static Fingerprint library() {
+		return Library.FINGERPRINT;
+	}
+
+	private static final class Library {
+		static final Fingerprint FINGERPRINT = compute();
+
+		private static Fingerprint compute() {
+			Fingerprint.Builder fingerprint = Fingerprint.builder();
+			fingerprint.putString(VersionsCache.class.getPackage().getImplementationVersion());
+			// snapshots and local builds don't change the version, so the code itself counts too
+			for (Class<?> clazz : Arrays.asList(Changelog.class, ChangelogAndNext.class, ChangelogBytes.class, PoolString.class,
+					NextVersionCfg.class, NextVersionFunction.class, VersionNumber.class, BumpMatcher.class, UnreleasedSections.class)) {
+				putClass(fingerprint, clazz);
+				for (Class<?> nested : clazz.getDeclaredClasses()) {
+					putClass(fingerprint, nested);
+				}
+			}
+			return fingerprint.build();
+		}
+
+		private static void putClass(Fingerprint.Builder fingerprint, Class<?> clazz) {
+			fingerprint.putString(clazz.getName());
+			String resource = clazz.getName().substring(clazz.getName().lastIndexOf('.') + 1) + ".class";
+			try (InputStream in = clazz.getResourceAsStream(resource)) {
+				fingerprint.putBytes(in == null ? new byte[0] : in.readAllBytes());
+			} catch (IOException e) {
+				fingerprint.putBytes(new byte[0]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the versions for exactly this input, calling `calculate` if they aren't cached in memory, in
+	 * {@link CacheCfg#sharedVersions}, or in the {@link CacheCfg#persistentDir}. If several threads ask for
+	 * the same input at once, only one of them calls `calculate`, and the others wait for its result.
+	 */
+	Versions get(Input input, CacheCfg cfg, Callable<Versions> calculate) throws IOException {
+		String key = input.changelogFile.canonicalPath();
+		Fingerprint fingerprint = input.fingerprint();
+		Callable<Versions> onMiss = calculate;
+		if (cfg.persistentDir != null) {
+			onMiss = withStore(new VersionsStore(cfg.persistentDir.toPath()), key, fingerprint, onMiss);
+		}
+		if (cfg.sharedVersions != null) {
+			onMiss = withTier(new SharedVersions(cfg.sharedVersions, cfg.maxEntries), key, fingerprint, onMiss);
+		}
+		if (cfg.maxEntries == 0) {
+			stats.misses.increment();
+			return getOrRethrow(new FutureTask<>(onMiss), true);
+		}
+		long now = System.nanoTime();
+		Cached fresh = new Cached(fingerprint, new FutureTask<>(onMiss), now);
+		Cached current = cache.compute(key, (unused, existing) -> {
+			if (existing == null || !existing.input.equals(fingerprint)) {
+				return fresh;
+			} else if (isExpired(cfg, existing, now)) {
+				stats.evictions.increment();
+				return fresh;
+			} else {
+				return existing;
+			}
+		});
+		current.accessedAtNanos = now;
+		if (current == fresh) {
+			stats.misses.increment();
+		} else {
+			stats.hits.increment();
+		}
+		if (current == fresh && cache.size() > cfg.maxEntries) {
+			evict(cfg);
+		}
+		try {
+			return getOrRethrow(current.versions, current == fresh);
+		} catch (IOException | RuntimeException | Error e) {
+			// don't cache failures
+			if (cache.remove(key, current)) {
+				memoized.remove(key);
+			}
+			throw e;
+		}
+	}
+
+	/** Tries the tier before calculating, and stores whatever gets calculated in it. */
+	private static Callable<Versions> withTier(Tier tier, String canonicalPath, Fingerprint fingerprint, Callable<Versions> calculate) {
+		return () -> {
+			Versions stored = tier.read(canonicalPath, fingerprint);
+			if (stored != null) {
+				return stored;
+			}
+			Versions calculated = calculate.call();
+			tier.write(canonicalPath, fingerprint, calculated);
+			return calculated;
+		};
+	}
+
+	/**
+	 * Like {@link #withTier}, but a stored entry for an older input still has the {@link Versions#key()} it was
+	 * calculated from, which gets memoized so that the calculation can reuse it without reading the store again.
+	 */
+	private Callable<Versions> withStore(VersionsStore store, String canonicalPath, Fingerprint fingerprint, Callable<Versions> calculate) {
+		return () -> {
+			VersionsStore.Stored stored = store.readStored(canonicalPath);
+			if (stored != null) {
+				if (stored.input.equals(fingerprint)) {
+					return stored.versions;
+				} else if (stored.versions.key() != null) {
+					memoize(canonicalPath, stored.versions);
+				}
+			}
+			Versions calculated = calculate.call();
+			store.write(canonicalPath, fingerprint, calculated);
+			return calculated;
+		};
+	}
+
+	private static Versions getOrRethrow(FutureTask<Versions> task, boolean run) throws IOException {
+		if (run) {
+			task.run();
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for another thread to calculate the versions");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new IOException(cause);
+			}
+		}
+	}
+
+	/**
+	 * Returns the versions most recently calculated for this changelog if they have the same {@link Versions#key()},
+	 * which survives edits to the changelog that don't touch the unreleased changes or the last version.
+	 * On a miss in memory, the {@link CacheCfg#persistentDir} has already memoized what it had for this changelog.
+	 */
+	@NullOr
+	Versions memoized(String canonicalPath, Fingerprint key) {
+		Versions versions = memoized.get(canonicalPath);
+		if (versions != null && key.equals(versions.key())) {
+			// a fresh instance, the same as if they had been calculated again
+			return new Versions(versions.next(), versions.last(), key);
+		}
+		return null;
+	}
+
+	/**
+	 * Remembers versions which have a {@link Versions#key()}, see {@link #memoized(String, Fingerprint)}.
+	 * Only for changelogs which are in the cache, so that eviction bounds both of them.
+	 */
+	void memoize(String canonicalPath, Versions versions) {
+		if (cache.containsKey(canonicalPath)) {
+			memoized.put(canonicalPath, versions);
+			// in case it was evicted in the meantime
+			if (!cache.containsKey(canonicalPath)) {
+				memoized.remove(canonicalPath);
+			}
+		}
+	}
+
+	/** Returns the signature of the given file, without touching the filesystem if it is being watched and hasn't changed. */
+	FileSignature sign(File file, CacheCfg cfg, Callable<FileSignature> sign) throws IOException {
+		FileWatcher watcher = cfg.watchFiles ? watcher() : null;
+		if (watcher != null) {
+			return watcher.sign(file, sign);
+		}
+		try {
+			return sign.call();
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/** Returns the parsed changelog for this file, which is kept for next time if {@link CacheCfg#keepChangelogs}. */
+	Changelog changelog(FileSignature file, CacheCfg cfg, Supplier<Changelog> parse) {
+		if (!cfg.keepChangelogs) {
+			return parse.get();
+		}
+		String key = file.canonicalPath();
+		Fingerprint.Builder builder = Fingerprint.builder();
+		file.addTo(builder);
+		Fingerprint fingerprint = builder.build();
+		SoftChangelog kept = changelogs.get(key);
+		Changelog changelog = kept != null && kept.file.equals(fingerprint) ? kept.get() : null;
+		if (changelog == null) {
+			changelog = parse.get();
+			changelogs.put(key, new SoftChangelog(fingerprint, changelog));
+		}
+		return changelog;
+	}
+
+	CacheCfg cfg() {
+		return cfg;
+	}
+
+	/** Returns the watcher, creating it if needed, or null if the platform can't watch files. */
+	private @NullOr FileWatcher watcher() {
+		FileWatcher watcher = this.watcher;
+		if (watcher != null || watchUnsupported) {
+			return watcher;
+		}
+		synchronized (this) {
+			if (this.watcher == null && !watchUnsupported) {
+				this.watcher = FileWatcher.create();
+				watchUnsupported = this.watcher == null;
+			}
+			return this.watcher;
+		}
+	}
+
+	static void validate(CacheCfg cfg) {
+		Preconditions.checkArgument(cfg.maxEntries >= 0, "maxEntries can't be negative, was %s", cfg.maxEntries);
+		Preconditions.checkArgument(cfg.timeToLive == null || !cfg.timeToLive.isNegative(), "timeToLive can't be negative, was %s", cfg.timeToLive);
+	}
+
+	void setCfg(CacheCfg cfg) {
+		validate(cfg);
+		this.cfg = cfg.shallowCopy();
+		if (!cfg.watchFiles) {
+			stopWatching();
+		}
+		if (!cfg.keepChangelogs) {
+			changelogs.clear();
+		}
+		evicting.lock();
+		try {
+			evictLocked(cfg);
+		} finally {
+			evicting.unlock();
+		}
+	}
+
+	void clear() {
+		cache.clear();
+		memoized.clear();
+		changelogs.clear();
+		stopWatching();
+	}
+
+	/** Closes the watcher, if there is one. The next call which asks for {@link CacheCfg#watchFiles} creates a new one. */
+	synchronized void stopWatching() {
+		if (watcher != null) {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				// nothing more to release
+			}
+			watcher = null;
+		}
+	}
+
+	boolean isWatching() {
+		return watcher != null;
+	}
+
+	int size() {
+		return cache.size();
+	}
+
+	int memoizedSize() {
+		return memoized.size();
+	}
+
+	/** Evicts unless another thread is already evicting. */
+	private void evict(CacheCfg cfg) {
+		if (evicting.tryLock()) {
+			try {
+				evictLocked(cfg);
+			} finally {
+				evicting.unlock();
+			}
+		}
+	}
+
+	/** Removes the expired entries, then the least recently used ones until there are at most maxEntries. */
+	private void evictLocked(CacheCfg cfg) {
+		long now = System.nanoTime();
+		if (cfg.timeToLive != null) {
+			cache.entrySet().removeIf(entry -> {
+				boolean expired = isExpired(cfg, entry.getValue(), now);
+				if (expired) {
+					stats.evictions.increment();
+					memoized.remove(entry.getKey());
+				}
+				return expired;
+			});
+		}
+		while (cache.size() > cfg.maxEntries) {
+			Map.Entry<String, Cached> eldest = null;
+			for (Map.Entry<String, Cached> entry : cache.entrySet()) {
+				if (eldest == null || entry.getValue().accessedAtNanos - eldest.getValue().accessedAtNanos < 0) {
+					eldest = entry;
+				}
+			}
+			if (eldest == null) {
+				return;
+			}
+			if (cache.remove(eldest.getKey(), eldest.getValue())) {
+				stats.evictions.increment();
+				memoized.remove(eldest.getKey());
+			}
+		}
+		// a changelog is kept no longer than the versions for the same file
+		changelogs.entrySet().removeIf(entry -> entry.getValue().get() == null || !cache.containsKey(entry.getKey()));
+	}
+
+	private static boolean isExpired(CacheCfg cfg, Cached cached, long now) {
+		return cfg.timeToLive != null && Duration.ofNanos(now - cached.storedAtNanos).compareTo(cfg.timeToLive) >= 0;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2026 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.changelog;
+
+
+import com.diffplug.spotless.changelog.ChangelogAndNext.Versions;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+/**
+ * Keeps calculated versions in a directory, so that they outlive the process which calculated them.
+ * There is one file per changelog, named by the fingerprint of its canonical path, which holds the
+ * fingerprint of the input and the versions calculated from it. The store is only an optimization, so a file which is
+ * missing, corrupt, from another format version, or written by another release of this library is just a miss,
+ * and a failed write is ignored.
+ *
+ * The format is the magic number, the format version, the {@link VersionsCache#library()} fingerprint, the input
+ * fingerprint, the nullable {@link Versions#key()}, then the next version and the nullable last version.
+ */
+final class VersionsStore implements VersionsCache.Tier {
+	private static final int MAGIC = 0x53434c56; // SCLV
+	private static final byte FORMAT_VERSION = 4;
+
+	private final Path dir;
+	private final Fingerprint library;
+
+	VersionsStore(Path dir) {
+		this(dir, VersionsCache.library());
+	}
+
+	VersionsStore(Path dir, Fingerprint library) {
+		this.dir = dir;
+		this.library = library;
+	}
+
+	@Override
+	public @NullOr Versions read(String canonicalPath, Fingerprint input) {
+		Stored stored = readStored(canonicalPath);
+		return stored != null && stored.input.equals(input) ? stored.versions : null;
+	}
+
+	/** What is stored for one changelog, which might have been calculated from a different input. */
+	static final class Stored {
+		final Fingerprint input;
+		final Versions versions;
+
+		Stored(Fingerprint input, Versions versions) {
+			this.input = input;
+			this.versions = versions;
+		}
+	}
+
+	/** Returns whatever is stored for this changelog, no matter which input it was calculated from, or null if there's nothing. */
+	@NullOr
+	Stored readStored(String canonicalPath) {
+		byte[] content;
+		try {
+			content = Files.readAllBytes(fileFor(canonicalPath));
+		} catch (IOException e) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+			if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION || !readFingerprint(in).equals(library)) {
+				return null;
+			}
+			Fingerprint input = readFingerprint(in);
+			Fingerprint key = in.readBoolean() ? readFingerprint(in) : null;
+			String next = in.readUTF();
+			String last = in.readBoolean() ? in.readUTF() : null;
+			return new Stored(input, new Versions(next, last, key));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static Fingerprint readFingerprint(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[Fingerprint.BYTES];
+		in.readFully(bytes);
+		return Fingerprint.fromBytes(bytes);
+	}
+
+	@Override
+	public void write(String canonicalPath, Fingerprint input, Versions versions) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 3 * Fingerprint.BYTES);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeByte(FORMAT_VERSION);
+			out.write(library.toBytes());
+			out.write(input.toBytes());
+			out.writeBoolean(versions.key() != null);
+			if (versions.key() != null) {
+				out.write(versions.key().toBytes());
+			}
+			out.writeUTF(versions.next());
+			out.writeBoolean(versions.last() != null);
+			if (versions.last() != null) {
+				out.writeUTF(versions.last());
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Writing to memory can't fail", e);
+		}
+		Path file = fileFor(canonicalPath);
+		Path temp = null;
+		try {
+			Files.createDirectories(dir);
+			temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+			Files.write(temp, bytes.toByteArray());
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			temp = null;
+		} catch (IOException e) {
+			// the next process will just have to calculate it again
+		} finally {
+			if (temp != null) {
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException e) {
+					// nothing else to try
+				}
+			}
+		}
+	}
+
+	private Path fileFor(String canonicalPath) {
+		return dir.resolve(Fingerprint.of(canonicalPath).toHex() + ".versions");
+	}
+}
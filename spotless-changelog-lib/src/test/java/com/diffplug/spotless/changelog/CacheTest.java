@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2020 DiffPlug
+ * Copyright (C) 2020-2026 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,14 +16,38 @@
 package com.diffplug.spotless.changelog;
 
 
+import com.diffplug.spotless.changelog.ChangelogAndNext.Input;
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Assume;
 import org.junit.Test;
 
 public class CacheTest extends ResourceHarness {
 	private File changelogFile;
 
+	/** The cache is global, so every test starts with the default config and an empty cache. */
+	@After
+	public void resetCache() {
+		ChangelogAndNext.setCacheCfg(new CacheCfg());
+		ChangelogAndNext.clearCache();
+	}
+
 	@Test
 	public void testCache() throws IOException {
 		changelogFile = write("CHANGELOG.md",
@@ -68,6 +92,388 @@ public class CacheTest extends ResourceHarness {
 		Assertions.assertThat(at200.versions()).isSameAs(at200_2.versions());
 	}
 
+	@Test
+	public void testEviction() throws IOException {
+		File first = write("first/CHANGELOG.md", "", "## [Unreleased]", "", "## [1.0.0] - 2020-01-01", "");
+		File second = write("second/CHANGELOG.md", "", "## [Unreleased]", "", "## [2.0.0] - 2020-01-01", "");
+		NextVersionCfg cfg = new NextVersionCfg();
+		CacheCfg cacheCfg = new CacheCfg();
+		cacheCfg.maxEntries = 1;
+		ChangelogAndNext.setCacheCfg(cacheCfg);
+		ChangelogAndNext firstModel = ChangelogAndNext.calculateUsingCache(first, cfg);
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(first, cfg).versions()).isSameAs(firstModel.versions());
+		// the second changelog evicts the first
+		ChangelogAndNext.calculateUsingCache(second, cfg);
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(first, cfg).versions()).isNotSameAs(firstModel.versions());
+
+		// clearing empties it
+		firstModel = ChangelogAndNext.calculateUsingCache(first, cfg);
+		ChangelogAndNext.clearCache();
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(first, cfg).versions()).isNotSameAs(firstModel.versions());
+
+		// and everything expires immediately with a zero time-to-live
+		cacheCfg.maxEntries = 256;
+		cacheCfg.timeToLive = Duration.ZERO;
+		ChangelogAndNext.setCacheCfg(cacheCfg);
+		firstModel = ChangelogAndNext.calculateUsingCache(first, cfg);
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(first, cfg).versions()).isNotSameAs(firstModel.versions());
+		Assertions.assertThat(firstModel.versions().last()).isEqualTo("1.0.0");
+	}
+
+	@Test
+	public void testKeyOnContentHash() throws IOException {
+		File changelog = write("hashed/CHANGELOG.md", "", "## [Unreleased]", "", "## [1.0.0] - 2020-01-01", "");
+		NextVersionCfg cfg = new NextVersionCfg();
+		CacheCfg cacheCfg = new CacheCfg();
+		// by default, touching the file invalidates the cache
+		ChangelogAndNext before = ChangelogAndNext.calculateUsingCache(changelog, cfg);
+		Assertions.assertThat(changelog.setLastModified(changelog.lastModified() - 10_000)).isTrue();
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, cfg).versions()).isNotSameAs(before.versions());
+
+		// but not when keying on the content
+		cacheCfg.keyOnContentHash = true;
+		ChangelogAndNext.setCacheCfg(cacheCfg);
+		before = ChangelogAndNext.calculateUsingCache(changelog, cfg);
+		Assertions.assertThat(changelog.setLastModified(changelog.lastModified() - 10_000)).isTrue();
+		ChangelogAndNext touched = ChangelogAndNext.calculateUsingCache(changelog, cfg);
+		Assertions.assertThat(touched.versions()).isSameAs(before.versions());
+		// the bytes which were hashed aren't kept, the changelog is read again when it is asked for
+		CacheStats beforeChangelog = ChangelogAndNext.cacheStats();
+		Assertions.assertThat(touched.changelog().versionLast()).isEqualTo("1.0.0");
+		Assertions.assertThat(ChangelogAndNext.cacheStats().minus(beforeChangelog).bytesRead()).isEqualTo(changelog.length());
+
+		// which still notices a change in the content
+		write("hashed/CHANGELOG.md", "", "## [Unreleased]", "", "## [1.0.1] - 2020-01-01", "");
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, cfg).versions().last()).isEqualTo("1.0.1");
+	}
+
+	@Test
+	public void testSharedVersions() throws IOException {
+		File changelog = write("shared/CHANGELOG.md", "", "## [Unreleased]", "- change", "", "## [1.0.0] - 2020-01-01", "");
+		NextVersionCfg cfg = new NextVersionCfg();
+		CacheCfg cacheCfg = new CacheCfg();
+		ConcurrentMap<String, String> shared = new ConcurrentHashMap<>();
+		cacheCfg.sharedVersions = shared;
+		ChangelogAndNext.calculateUsingCache(changelog, cfg, cacheCfg);
+		Assertions.assertThat(shared).hasSize(1);
+
+		// a copy of the library in another classloader has an empty cache of its own, but finds the shared versions
+		VersionsCache other = new VersionsCache();
+		Input input = new Input();
+		input.changelogFile = FileSignature.sign(changelog);
+		input.cfgNextVersion = cfg;
+		ChangelogAndNext.Versions found = other.get(input, cacheCfg, () -> {
+			throw new AssertionError("Should have been shared");
+		});
+		Assertions.assertThat(found.next()).isEqualTo("1.0.1");
+		Assertions.assertThat(found.last()).isEqualTo("1.0.0");
+
+		// a different input is a miss
+		input.cfgNextVersion = new NextVersionCfg();
+		input.cfgNextVersion.forceNextVersion = "2.0.0";
+		Assertions.assertThat(new SharedVersions(shared, 1).read(input.changelogFile.canonicalPath(), input.fingerprint())).isNull();
+
+		// and the key includes the library, so another release of it never shares these versions
+		Assertions.assertThat(shared.keySet().iterator().next()).startsWith(VersionsCache.library().toHex() + ".");
+	}
+
+	@Test
+	public void testSharedVersionsTrimsLeastRecentlyUsed() {
+		Fingerprint input = Fingerprint.of("input");
+		ConcurrentMap<String, String> shared = new ConcurrentHashMap<>();
+		SharedVersions store = new SharedVersions(shared, 2);
+		store.write("/a/CHANGELOG.md", input, new ChangelogAndNext.Versions("1.0.0", null));
+		store.write("/b/CHANGELOG.md", input, new ChangelogAndNext.Versions("2.0.0", null));
+		// using a makes b the least recently used
+		Assertions.assertThat(store.read("/a/CHANGELOG.md", input).next()).isEqualTo("1.0.0");
+		store.write("/c/CHANGELOG.md", input, new ChangelogAndNext.Versions("3.0.0", null));
+		Assertions.assertThat(store.read("/a/CHANGELOG.md", input).next()).isEqualTo("1.0.0");
+		Assertions.assertThat(store.read("/b/CHANGELOG.md", input)).isNull();
+		Assertions.assertThat(store.read("/c/CHANGELOG.md", input).next()).isEqualTo("3.0.0");
+
+		// the entry which was just written is never trimmed, even if every other entry was used later
+		SharedVersions tiny = new SharedVersions(shared, 1);
+		tiny.write("/d/CHANGELOG.md", input, new ChangelogAndNext.Versions("4.0.0", null));
+		Assertions.assertThat(tiny.read("/d/CHANGELOG.md", input).next()).isEqualTo("4.0.0");
+		Assertions.assertThat(shared).hasSize(1);
+	}
+
+	@Test
+	public void testCacheCfgPerCall() throws IOException {
+		File changelog = write("per-call/CHANGELOG.md", "", "## [Unreleased]", "", "## [1.0.0] - 2020-01-01", "");
+		NextVersionCfg cfg = new NextVersionCfg();
+		CacheCfg perCall = new CacheCfg();
+		perCall.keyOnContentHash = true;
+		ChangelogAndNext before = ChangelogAndNext.calculateUsingCache(changelog, cfg, perCall);
+		Assertions.assertThat(changelog.setLastModified(changelog.lastModified() - 10_000)).isTrue();
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, cfg, perCall).versions()).isSameAs(before.versions());
+		// without changing the config for everyone else
+		Assertions.assertThat(ChangelogAndNext.cacheCfg().keyOnContentHash).isFalse();
+		Assertions.assertThat(changelog.setLastModified(changelog.lastModified() - 10_000)).isTrue();
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, cfg).versions()).isNotSameAs(before.versions());
+	}
+
+	@Test
+	public void testPersistentDir() throws IOException {
+		File changelog = write("persistent/CHANGELOG.md", "", "## [Unreleased]", "- change", "", "## [1.0.0] - 2020-01-01", "");
+		File dir = file("persistent-cache");
+		NextVersionCfg cfg = new NextVersionCfg();
+		CacheCfg cacheCfg = new CacheCfg();
+		cacheCfg.persistentDir = dir;
+		ChangelogAndNext.setCacheCfg(cacheCfg);
+		ChangelogAndNext.calculateUsingCache(changelog, cfg);
+		Assertions.assertThat(dir.list()).hasSize(1);
+
+		// a fresh process reads the versions from the store, without calculating them
+		ChangelogAndNext.clearCache();
+		Input input = new Input();
+		input.changelogFile = FileSignature.sign(changelog);
+		input.cfgNextVersion = cfg;
+		ChangelogAndNext.Versions stored = ChangelogAndNext.cache.get(input, ChangelogAndNext.cacheCfg(), () -> {
+			throw new AssertionError("Should have come from the store");
+		});
+		Assertions.assertThat(stored.next()).isEqualTo("1.0.1");
+		Assertions.assertThat(stored.last()).isEqualTo("1.0.0");
+
+		// a different input is a miss, and replaces what was stored
+		VersionsStore store = new VersionsStore(dir.toPath());
+		input.cfgNextVersion = new NextVersionCfg();
+		input.cfgNextVersion.forceNextVersion = "2.0.0";
+		String path = input.changelogFile.canonicalPath();
+		Fingerprint forced = input.fingerprint();
+		Assertions.assertThat(store.read(path, forced)).isNull();
+		store.write(path, forced, new ChangelogAndNext.Versions("2.0.0", null));
+		Assertions.assertThat(store.read(path, forced).next()).isEqualTo("2.0.0");
+		Assertions.assertThat(store.read(path, forced).last()).isNull();
+		Assertions.assertThat(dir.list()).hasSize(1);
+
+		// as is whatever another release of the library stored
+		Assertions.assertThat(new VersionsStore(dir.toPath(), Fingerprint.of("another release")).read(path, forced)).isNull();
+
+		// and a corrupt file is just a miss
+		write("persistent-cache/" + dir.list()[0], "garbage");
+		Assertions.assertThat(store.read(path, forced)).isNull();
+	}
+
+	@Test
+	public void testKeepChangelogs() throws IOException {
+		File changelog = write("kept/CHANGELOG.md", "", "## [Unreleased]", "", "## [1.0.0] - 2020-01-01", "");
+		NextVersionCfg cfg = new NextVersionCfg();
+		CacheCfg cacheCfg = new CacheCfg();
+		cacheCfg.keepChangelogs = true;
+		ChangelogAndNext.setCacheCfg(cacheCfg);
+		Changelog parsed = ChangelogAndNext.calculateUsingCache(changelog, cfg).changelog();
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, cfg).changelog()).isSameAs(parsed);
+		// even with a different config
+		NextVersionCfg forced = new NextVersionCfg();
+		forced.forceNextVersion = "2.0.0";
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, forced).changelog()).isSameAs(parsed);
+
+		// but not once the file changes
+		write("kept/CHANGELOG.md", "", "## [Unreleased]", "", "## [1.0.1] - 2020-01-01", "");
+		Assertions.assertThat(changelog.setLastModified(changelog.lastModified() + 10_000)).isTrue();
+		Changelog changed = ChangelogAndNext.calculateUsingCache(changelog, cfg).changelog();
+		Assertions.assertThat(changed).isNotSameAs(parsed);
+		Assertions.assertThat(changed.versionLast()).isEqualTo("1.0.1");
+	}
+
+	@Test
+	public void testWatchFiles() throws Exception {
+		File changelog = write("watched/CHANGELOG.md", "", "## [Unreleased]", "", "## [1.0.0] - 2020-01-01", "");
+		NextVersionCfg cfg = new NextVersionCfg();
+		CacheCfg cacheCfg = new CacheCfg();
+		cacheCfg.watchFiles = true;
+		ChangelogAndNext.setCacheCfg(cacheCfg);
+		ChangelogAndNext first = ChangelogAndNext.calculateUsingCache(changelog, cfg);
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, cfg).versions()).isSameAs(first.versions());
+
+		// a change is noticed once its event arrives
+		write("watched/CHANGELOG.md", "", "## [Unreleased]", "", "## [1.0.1] - 2020-01-01", "");
+		Assertions.assertThat(changelog.setLastModified(changelog.lastModified() + 10_000)).isTrue();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		String last = first.versions().last();
+		while (!"1.0.1".equals(last) && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+			last = ChangelogAndNext.calculateUsingCache(changelog, cfg).versions().last();
+		}
+		Assertions.assertThat(last).isEqualTo("1.0.1");
+	}
+
+	@Test
+	public void testWatcherIsClosed() throws IOException {
+		File changelog = write("closed/CHANGELOG.md", "", "## [Unreleased]", "", "## [1.0.0] - 2020-01-01", "");
+		NextVersionCfg cfg = new NextVersionCfg();
+		CacheCfg cacheCfg = new CacheCfg();
+		cacheCfg.watchFiles = true;
+		ChangelogAndNext first = ChangelogAndNext.calculateUsingCache(changelog, cfg, cacheCfg);
+		Assume.assumeTrue("this platform can't watch files", ChangelogAndNext.cache.isWatching());
+		// a per-call config never goes through setCacheCfg, so the watcher needs another way to be closed
+		ChangelogAndNext.stopWatchingFiles();
+		Assertions.assertThat(ChangelogAndNext.cache.isWatching()).isFalse();
+		// without losing the cached versions
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, cfg, cacheCfg).versions()).isSameAs(first.versions());
+		Assertions.assertThat(ChangelogAndNext.cache.isWatching()).isTrue();
+
+		// and clearing the cache closes it too
+		ChangelogAndNext.clearCache();
+		Assertions.assertThat(ChangelogAndNext.cache.isWatching()).isFalse();
+	}
+
+	@Test
+	public void testSameMillisecondRewrite() throws IOException {
+		File changelog = write("rewritten/CHANGELOG.md", "", "## [Unreleased]", "", "## [1.0.0] - 2020-01-01", "");
+		NextVersionCfg cfg = new NextVersionCfg();
+		// a timestamp with no sub-millisecond part, which the rewrite will keep
+		Assertions.assertThat(changelog.setLastModified(1_600_000_000_123L)).isTrue();
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, cfg).versions().last()).isEqualTo("1.0.0");
+
+		// same size, same millisecond, but it's a different file now
+		File replacement = write("rewritten/CHANGELOG.md.new", "", "## [Unreleased]", "", "## [2.0.0] - 2020-01-01", "");
+		Assertions.assertThat(replacement.setLastModified(1_600_000_000_123L)).isTrue();
+		Files.move(replacement.toPath(), changelog.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		Assertions.assertThat(changelog.lastModified()).isEqualTo(1_600_000_000_123L);
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, cfg).versions().last()).isEqualTo("2.0.0");
+	}
+
+	@Test
+	public void testMissingFile() throws IOException {
+		File missing = file("missing/CHANGELOG.md");
+		Assertions.assertThatThrownBy(() -> ChangelogAndNext.calculateUsingCache(missing, new NextVersionCfg()))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("but it was not present");
+	}
+
+	@Test
+	public void testStats() throws IOException {
+		File changelog = write("stats/CHANGELOG.md", "", "## [Unreleased]", "", "## [1.0.0] - 2020-01-01", "");
+		NextVersionCfg cfg = new NextVersionCfg();
+		CacheStats before = ChangelogAndNext.cacheStats();
+		ChangelogAndNext.calculateUsingCache(changelog, cfg);
+		ChangelogAndNext.calculateUsingCache(changelog, cfg).changelog();
+
+		CacheStats stats = ChangelogAndNext.cacheStats().minus(before);
+		Assertions.assertThat(stats.hitCount()).isEqualTo(1L);
+		Assertions.assertThat(stats.missCount()).isEqualTo(1L);
+		Assertions.assertThat(stats.hitRate()).isEqualTo(0.5);
+		// the versions on the miss, the full changelog on the hit
+		Assertions.assertThat(stats.parseCount()).isEqualTo(2L);
+		Assertions.assertThat(stats.lazyChangelogLoads()).isEqualTo(1L);
+		Assertions.assertThat(stats.bytesRead()).isEqualTo(2 * changelog.length());
+	}
+
+	@Test
+	public void testConcurrentMissesShareOneCalculation() throws Exception {
+		File changelog = write("concurrent/CHANGELOG.md", "", "## [Unreleased]", "- change", "", "## [1.0.0] - 2020-01-01", "");
+		NextVersionCfg cfg = new NextVersionCfg();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<ChangelogAndNext.Versions>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; ++i) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					return ChangelogAndNext.calculateUsingCache(changelog, cfg).versions();
+				}));
+			}
+			start.countDown();
+			ChangelogAndNext.Versions first = futures.get(0).get();
+			Assertions.assertThat(first.next()).isEqualTo("1.0.1");
+			for (Future<ChangelogAndNext.Versions> future : futures) {
+				Assertions.assertThat(future.get()).isSameAs(first);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/** Counts its calls in a static, so that the count isn't part of its fingerprint. */
+	static class CountingFunction extends NextVersionFunction.NonSemver {
+		static final AtomicInteger calls = new AtomicInteger();
+
+		@Override
+		protected String nextVersion(String unreleasedChanges, String lastVersion) {
+			calls.incrementAndGet();
+			return lastVersion + ".next";
+		}
+	}
+
+	@Test
+	public void testEditsToHistoryDontRecalculateNextVersion() throws IOException {
+		String unreleased = "## [Unreleased]\n- change\n\n## [1.0.0] - 2020-01-01\n";
+		File changelog = write("memoized/CHANGELOG.md", "", unreleased + "## [0.9.0] - 2019-01-01\n- tpyo");
+		NextVersionCfg cfg = new NextVersionCfg();
+		cfg.function = new CountingFunction();
+		CacheCfg cacheCfg = new CacheCfg();
+		CountingFunction.calls.set(0);
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, cfg).versions().next()).isEqualTo("1.0.0.next");
+
+		// fixing an old typo is a cache miss, but the next version doesn't get calculated again
+		write("memoized/CHANGELOG.md", "", unreleased + "## [0.9.0] - 2019-01-01\n- typo");
+		Assertions.assertThat(changelog.setLastModified(changelog.lastModified() - 10_000)).isTrue();
+		ChangelogAndNext fixed = ChangelogAndNext.calculateUsingCache(changelog, cfg);
+		Assertions.assertThat(fixed.versions().next()).isEqualTo("1.0.0.next");
+		Assertions.assertThat(fixed.changelog().toString()).contains("- typo");
+		Assertions.assertThat(CountingFunction.calls.get()).isEqualTo(1);
+
+		// but a change to the unreleased changes does
+		write("memoized/CHANGELOG.md", "", unreleased.replace("- change", "- other change") + "## [0.9.0] - 2019-01-01\n- typo");
+		Assertions.assertThat(changelog.setLastModified(changelog.lastModified() - 20_000)).isTrue();
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, cfg).versions().next()).isEqualTo("1.0.0.next");
+		Assertions.assertThat(CountingFunction.calls.get()).isEqualTo(2);
+
+		// and the persistent store remembers it across edits to the history too
+		cacheCfg.persistentDir = file("memoized-cache");
+		ChangelogAndNext.setCacheCfg(cacheCfg);
+		ChangelogAndNext.clearCache();
+		ChangelogAndNext.calculateUsingCache(changelog, cfg);
+		Assertions.assertThat(CountingFunction.calls.get()).isEqualTo(3);
+		ChangelogAndNext.clearCache();
+		write("memoized/CHANGELOG.md", "", unreleased.replace("- change", "- other change") + "## [0.9.0] - 2019-01-01\n- typo fixed");
+		Assertions.assertThat(changelog.setLastModified(changelog.lastModified() - 30_000)).isTrue();
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, cfg).versions().next()).isEqualTo("1.0.0.next");
+		Assertions.assertThat(CountingFunction.calls.get()).isEqualTo(3);
+	}
+
+	/** Counts how often it gets serialized, which is how a custom function is fingerprinted. */
+	static class SerializationCountingFunction extends NextVersionFunction.NonSemver {
+		static final AtomicInteger serialized = new AtomicInteger();
+
+		@Override
+		protected String nextVersion(String unreleasedChanges, String lastVersion) {
+			return lastVersion + ".next";
+		}
+
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			serialized.incrementAndGet();
+			out.defaultWriteObject();
+		}
+	}
+
+	@Test
+	public void testMissFingerprintsConfigOnce() throws IOException {
+		File changelog = write("fingerprinted/CHANGELOG.md", "", "## [Unreleased]", "- change", "", "## [1.0.0] - 2020-01-01", "");
+		NextVersionCfg cfg = new NextVersionCfg();
+		cfg.function = new SerializationCountingFunction();
+		SerializationCountingFunction.serialized.set(0);
+		Assertions.assertThat(ChangelogAndNext.calculateUsingCache(changelog, cfg).versions().next()).isEqualTo("1.0.0.next");
+		// the memo key reuses the fingerprint which the cache already computed
+		Assertions.assertThat(SerializationCountingFunction.serialized.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void testMemoizedIsBoundedByEviction() throws IOException {
+		NextVersionCfg cfg = new NextVersionCfg();
+		CacheCfg cacheCfg = new CacheCfg();
+		cacheCfg.maxEntries = 2;
+		ChangelogAndNext.setCacheCfg(cacheCfg);
+		for (int i = 0; i < 50; ++i) {
+			File changelog = write("bounded/" + i + "/CHANGELOG.md", "", "## [Unreleased]", "- change", "", "## [1.0.0] - 2020-01-01", "");
+			ChangelogAndNext.calculateUsingCache(changelog, cfg);
+		}
+		Assertions.assertThat(ChangelogAndNext.cache.size()).isEqualTo(2);
+		Assertions.assertThat(ChangelogAndNext.cache.memoizedSize()).isEqualTo(2);
+	}
+
 	private ChangelogAndNext assertNextLast(NextVersionCfg cfg, String next, String last) throws IOException {
 		ChangelogAndNext model = ChangelogAndNext.calculateUsingCache(changelogFile, cfg);
 		Assertions.assertThat(model.versions().next()).isEqualTo(next);
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2019-2020 DiffPlug
+ * Copyright (C) 2019-2026 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,14 +17,32 @@ package com.diffplug.spotless.changelog;
 
 
 import com.diffplug.common.base.Preconditions;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import org.assertj.core.api.Assertions;
+import org.junit.Assume;
 import org.junit.Test;
 import pl.tlinkowski.annotation.basic.NullOr;
 
-public class ChangelogTest {
+public class ChangelogTest extends ResourceHarness {
 	@Test
 	public void empty() {
 		Consumer<String> test = str -> {
@@ -75,6 +93,12 @@ public class ChangelogTest {
 		test("\n## [Unreleased]\nOnething\n## [x.y.z] - 1234a56b78 moreStuff").last("x.y.z").errors("{}").unreleasedChanges("\nOnething");
 	}
 
+	@Test
+	public void errorLineNumbers() throws IOException {
+		test("\n## [Unreleased]\n-CONTENT\n\n## [1.0.0] - 2020-01-01\n## [0.9.0] -\n## [0.8.0] - 2019-01-01\n").last("1.0.0")
+				.errors("{6='] - ' is missing from the expected '## [x.y.z] - yyyy-mm-dd'}");
+	}
+
 	@Test
 	public void afterRelease() throws IOException {
 		test("\n## [Unreleased]\n## [x.y.z] - 1234a56b78").afterRelease(
@@ -95,8 +119,204 @@ public class ChangelogTest {
 				"\n## [Unreleased] moreStuff\n\n## [1.0.0] - 2020-12-30\n-CONTENT\n");
 	}
 
+	@Test
+	public void releaseTwice() {
+		Changelog once = new Changelog("\n## [Unreleased]\n-A\n## [1.0.0] - 2020-01-01\n-B\n").releaseUnreleased("1.1.0", "2020-02-02");
+		Assertions.assertThat(once.versionLast()).isEqualTo("1.1.0");
+		Changelog twice = once.releaseUnreleased("1.2.0", "2020-03-03");
+		Assertions.assertThat(twice.versionLast()).isEqualTo("1.2.0");
+		Assertions.assertThat(twice.toString()).isEqualTo(
+				"\n## [Unreleased]\n\n## [1.2.0] - 2020-03-03\n\n## [1.1.0] - 2020-02-02\n-A\n## [1.0.0] - 2020-01-01\n-B\n");
+		Assertions.assertThat(once.toString()).isEqualTo(
+				"\n## [Unreleased]\n\n## [1.1.0] - 2020-02-02\n-A\n## [1.0.0] - 2020-01-01\n-B\n");
+	}
+
+	@Test
+	public void entries() {
+		Changelog changelog = new Changelog("\n## [Unreleased]\n-A\n## [1.1.0] - 2020-02-02 misc\n-B\n## [1.0.0] - 2020-01-01\n-C\n## [0.9.0] - 2019-01-01\n-D\n");
+		Changelog.VersionEntry entry = changelog.entry("1.1.0");
+		Assertions.assertThat(entry.date().toString()).isEqualTo("2020-02-02");
+		Assertions.assertThat(entry.headerMisc().toString()).isEqualTo("misc");
+		Assertions.assertThat(entry.changes().toString()).isEqualTo("\n-B");
+		Assertions.assertThat(changelog.entry("2.0.0")).isNull();
+		Assertions.assertThat(changelog.entriesBetween("0.9.0", "1.1.0").stream().map(e -> e.version().toString()))
+				.containsExactly("1.1.0", "1.0.0");
+		Assertions.assertThat(changelog.entriesBetween("1.0.0", "1.0.0")).isEmpty();
+
+		Changelog released = changelog.releaseUnreleased("1.2.0", "2020-03-03");
+		Assertions.assertThat(released.entry("1.2.0").changes().toString()).isEqualTo("\n-A");
+		Assertions.assertThat(released.entriesBetween("1.0.0", "1.2.0").stream().map(e -> e.version().toString()))
+				.containsExactly("1.2.0", "1.1.0");
+
+		// changing a copy doesn't change the changelog
+		entry.setChanges("\n-changed");
+		Assertions.assertThat(changelog.entry("1.1.0").changes().toString()).isEqualTo("\n-B");
+	}
+
+	@Test
+	public void writeToLargerThanBuffer() {
+		StringBuilder builder = new StringBuilder("\n## [Unreleased]\n");
+		for (int i = 0; i < 2000; ++i) {
+			builder.append("- change ").append(i).append(" \u00e9\uD83D\uDE00\n");
+		}
+		builder.append("## [1.0.0] - 2020-01-01\n");
+		test(builder.toString()).last("1.0.0");
+	}
+
+	@Test
+	public void writeToFile() throws IOException {
+		String content = "# Ch\u00e4ngelog\n## [Unreleased]\n- caf\u00e9 \uD83D\uDE00\n## [1.0.0] - 2020-01-01 [\u00fcber]\n- old\n## [0.9.0] - 2019-01-01\n<!-- END CHANGELOG -->\nlegacy\n";
+		for (String raw : new String[]{content, content.replace("\n", "\r\n")}) {
+			File file = write("CHANGELOG.md", raw.getBytes(StandardCharsets.UTF_8));
+			Changelog bumped = new Changelog(raw).releaseUnreleased("1.1.0", "2020-12-30");
+			bumped.writeTo(file);
+			assertFile("CHANGELOG.md").hasContent(bumped.toString());
+			assertFolderContent("").containsExactly("CHANGELOG.md");
+
+			// if the file has changed since it was parsed, the whole thing gets written
+			write("CHANGELOG.md", (raw + "more").getBytes(StandardCharsets.UTF_8));
+			bumped.writeTo(file);
+			assertFile("CHANGELOG.md").hasContent(bumped.toString());
+
+			// even if the edit kept the size the same
+			String sameSize = raw.replace("- old", "- odl");
+			write("CHANGELOG.md", sameSize.getBytes(StandardCharsets.UTF_8));
+			bumped.writeTo(file);
+			assertFile("CHANGELOG.md").hasContent(bumped.toString());
+
+			// and an unchanged changelog writes itself back exactly
+			write("CHANGELOG.md", raw.getBytes(StandardCharsets.UTF_8));
+			new Changelog(raw).writeTo(file);
+			assertFile("CHANGELOG.md").hasContent(raw);
+		}
+	}
+
+	@Test
+	public void writeToFileKeepsLinkAndAttributes() throws IOException {
+		Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+		String raw = "\n## [Unreleased]\n- change\n## [1.0.0] - 2020-01-01\n- old\n";
+		File target = write("real/CHANGELOG.md", raw.getBytes(StandardCharsets.UTF_8));
+		Files.setPosixFilePermissions(target.toPath(), PosixFilePermissions.fromString("rw-r-----"));
+		Path link = Files.createSymbolicLink(file("CHANGELOG.md").toPath(), target.toPath());
+		write("real/CHANGELOG.md.tmp", "someone else's file");
+
+		Changelog bumped = new Changelog(raw).releaseUnreleased("1.1.0", "2020-12-30");
+		bumped.writeTo(link.toFile());
+		// the link still points at the target, which has the new content and the old permissions
+		Assertions.assertThat(Files.isSymbolicLink(link)).isTrue();
+		assertFile("real/CHANGELOG.md").hasContent(bumped.toString());
+		Assertions.assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(target.toPath()))).isEqualTo("rw-r-----");
+		// and a file which happens to have the temp name is left alone
+		assertFile("real/CHANGELOG.md.tmp").hasContent("someone else's file\n");
+		assertFolderContent("real").containsExactly("CHANGELOG.md", "CHANGELOG.md.tmp");
+	}
+
+	@Test
+	public void largeFileIsMapped() throws IOException {
+		StringBuilder builder = new StringBuilder("\r\n## [Unreleased]\r\n### Added\r\n- caf\u00e9\r\n");
+		for (int i = 1000; builder.length() < 2 * ChangelogBytes.MAP_AT_LEAST_BYTES; --i) {
+			builder.append("## [1.").append(i).append(".0] - 2020-01-01\r\n- \u00fcber change\r\n");
+		}
+		String content = builder.toString();
+		File file = write("CHANGELOG.md", content.getBytes(StandardCharsets.UTF_8));
+		ChangelogAndNext model = ChangelogAndNext.calculate(file, new NextVersionCfg());
+		Assertions.assertThat(model.versions().last()).isEqualTo("1.1000.0");
+		Assertions.assertThat(model.versions().next()).isEqualTo("1.1001.0");
+		Assertions.assertThat(model.changelog().toString()).isEqualTo(content);
+	}
+
+	@Test
+	public void largeFileTruncatedBeforeChangelogIsRead() throws IOException {
+		StringBuilder builder = new StringBuilder("\n## [Unreleased]\n- change\n");
+		for (int i = 1000; builder.length() < 2 * ChangelogBytes.MAP_AT_LEAST_BYTES; --i) {
+			builder.append("## [1.").append(i).append(".0] - 2020-01-01\n- change\n");
+		}
+		String content = builder.toString();
+		File file = write("CHANGELOG.md", content.getBytes(StandardCharsets.UTF_8));
+		ChangelogAndNext model = ChangelogAndNext.calculate(file, new NextVersionCfg());
+		Assertions.assertThat(model.versions().last()).isEqualTo("1.1000.0");
+
+		// truncated in place, so a mapping which was kept around would fault
+		String truncated = "\n## [Unreleased]\n\n## [2.0.0] - 2021-01-01\n";
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			channel.truncate(0);
+			channel.write(ByteBuffer.wrap(truncated.getBytes(StandardCharsets.UTF_8)));
+		}
+		Assertions.assertThat(model.changelog().toString()).isIn(content, truncated);
+	}
+
+	@Test
+	public void largeChangelogParsedInParallel() {
+		StringBuilder builder = new StringBuilder("\n## [Unreleased]\n- change\n");
+		int lines = 3;
+		int i = 100_000;
+		while (builder.length() < 2 * Changelog.PARALLEL_AT_LEAST_CHARS) {
+			builder.append("## [1.").append(i--).append(".0] - 2020-01-01 misc\n- change\n");
+			lines += 2;
+		}
+		String content = builder.toString();
+		test(content).errors("{}").last("1.100000.0").unreleasedChanges("\n- change");
+		Assertions.assertThat(new Changelog(content).releaseUnreleased("2.0.0", "2021-01-01").toString())
+				.isEqualTo(content.replace("## [Unreleased]\n", "## [Unreleased]\n\n## [2.0.0] - 2021-01-01\n"));
+
+		String broken = content + "## [0.1.0] - 2019\n## [0.0.9 - 2019-01-01\n" + content.substring(content.indexOf("## [1."));
+		test(broken).last("1.100000.0").errors("{" + (lines + 1) + "='yyyy-mm-dd' is missing from the expected '## [x.y.z] - yyyy-mm-dd'}");
+	}
+
+	@Test
+	public void calculateAll() throws IOException {
+		Map<File, NextVersionCfg> cfgs = new LinkedHashMap<>();
+		for (int i = 0; i < 20; ++i) {
+			File changelog = write("batch/" + i + "/CHANGELOG.md", "", "## [Unreleased]", i % 2 == 0 ? "- fix" : "### Added", "", "## [1." + i + ".0] - 2020-01-01", "");
+			cfgs.put(changelog, new NextVersionCfg());
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Map<File, ChangelogAndNext> results = ChangelogAndNext.calculateAll(cfgs, executor);
+			Assertions.assertThat(new ArrayList<>(results.keySet())).isEqualTo(new ArrayList<>(cfgs.keySet()));
+			int i = 0;
+			for (Map.Entry<File, ChangelogAndNext> result : results.entrySet()) {
+				Assertions.assertThat(result.getValue().versions().next()).isEqualTo(i % 2 == 0 ? "1." + i + ".1" : "1." + (i + 1) + ".0");
+				Assertions.assertThat(result.getValue().changelog().versionLast()).isEqualTo("1." + i + ".0");
+				++i;
+			}
+
+			// every failure is reported
+			cfgs.put(file("batch/missing/CHANGELOG.md"), new NextVersionCfg());
+			cfgs.put(file("batch/absent/CHANGELOG.md"), new NextVersionCfg());
+			try {
+				ChangelogAndNext.calculateAll(cfgs, executor);
+				Assertions.fail("Expected the missing changelogs to fail");
+			} catch (IllegalArgumentException e) {
+				Assertions.assertThat(e).hasMessageContaining("batch/missing");
+				Assertions.assertThat(e.getSuppressed()).hasSize(1);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void versionsOnly() {
+		String content = "\n## [Unreleased]\n-CONTENT\n## [1.1.0] - 2020-01-02\n## [1.0.0 - broken\n## [0.9.0] - 2019-01-01\n";
+		Changelog full = new Changelog(content);
+		Assertions.assertThat(full.errors().toString()).isEqualTo("{5='] - ' is missing from the expected '## [x.y.z] - yyyy-mm-dd'}");
+
+		Changelog versionsOnly = Changelog.parseVersionsOnly(content);
+		Assertions.assertThat(versionsOnly.errors().toString()).isEqualTo("{}");
+		Assertions.assertThat(versionsOnly.versionLast()).isEqualTo("1.1.0");
+		Assertions.assertThat(versionsOnly.unreleasedChanges()).isEqualTo("\n-CONTENT");
+		Assertions.assertThat(versionsOnly.toString()).isEqualTo(content);
+		Assertions.assertThat(versionsOnly.releaseUnreleased("1.2.0", "2020-12-30").toString())
+				.isEqualTo(full.releaseUnreleased("1.2.0", "2020-12-30").toString());
+
+		ByteBuffer bytes = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+		Assertions.assertThat(ChangelogBytes.decode(bytes, 0, ChangelogBytes.versionsOnlyLength(bytes)))
+				.isEqualTo("\n## [Unreleased]\n-CONTENT\n## [1.1.0] - 2020-01-02\n");
+	}
+
 	static class ChangelogAssertions {
-		Changelog unix, win;
+		Changelog unix, win, versionsOnly, versionsOnlyBytesUnix, versionsOnlyBytesWin;
 
 		ChangelogAssertions(String contentUnix) {
 			Preconditions.checkArgument(contentUnix.indexOf("\r\n") == -1);
@@ -106,6 +326,19 @@ public class ChangelogTest {
 			String contentWin = contentUnix.replace("\n", "\r\n");
 			this.win = new Changelog(contentWin);
 			Assertions.assertThat(win.toString()).isEqualTo(contentWin);
+
+			assertWriteTo(unix);
+			assertWriteTo(win);
+
+			this.versionsOnly = Changelog.parseVersionsOnly(contentUnix);
+			Assertions.assertThat(versionsOnly.toString()).isEqualTo(contentUnix);
+			this.versionsOnlyBytesUnix = versionsOnlyFromBytes(contentUnix);
+			this.versionsOnlyBytesWin = versionsOnlyFromBytes(contentWin);
+		}
+
+		private static Changelog versionsOnlyFromBytes(String content) {
+			ByteBuffer bytes = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+			return Changelog.parseVersionsOnly(ChangelogBytes.decode(bytes, 0, ChangelogBytes.versionsOnlyLength(bytes)));
 		}
 
 		ChangelogAssertions errors(String errors) {
@@ -117,12 +350,18 @@ public class ChangelogTest {
 		ChangelogAssertions last(@NullOr String version) {
 			Assertions.assertThat(unix.versionLast()).isEqualTo(version);
 			Assertions.assertThat(win.versionLast()).isEqualTo(version);
+			Assertions.assertThat(versionsOnly.versionLast()).isEqualTo(version);
+			Assertions.assertThat(versionsOnlyBytesUnix.versionLast()).isEqualTo(version);
+			Assertions.assertThat(versionsOnlyBytesWin.versionLast()).isEqualTo(version);
 			return this;
 		}
 
 		ChangelogAssertions unreleasedChanges(String unreleased) {
 			Assertions.assertThat(unix.unreleasedChanges()).isEqualTo(unreleased);
 			Assertions.assertThat(win.unreleasedChanges()).isEqualTo(unreleased);
+			Assertions.assertThat(versionsOnly.unreleasedChanges()).isEqualTo(unreleased);
+			Assertions.assertThat(versionsOnlyBytesUnix.unreleasedChanges()).isEqualTo(unreleased);
+			Assertions.assertThat(versionsOnlyBytesWin.unreleasedChanges()).isEqualTo(unreleased);
 			return this;
 		}
 
@@ -133,8 +372,23 @@ public class ChangelogTest {
 			String unreleased = unix.releaseUnreleased(VERSION, DATE).toString();
 			Assertions.assertThat(unreleased).isEqualTo(afterRelease);
 			Assertions.assertThat(win.releaseUnreleased(VERSION, DATE).toString()).isEqualTo(unreleased.replace("\n", "\r\n"));
+			assertWriteTo(win.releaseUnreleased(VERSION, DATE));
 			return this;
 		}
+
+		private static void assertWriteTo(Changelog changelog) {
+			try {
+				StringWriter writer = new StringWriter();
+				changelog.writeTo(writer);
+				Assertions.assertThat(writer.toString()).isEqualTo(changelog.toString());
+
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				changelog.writeTo(Channels.newChannel(bytes));
+				Assertions.assertThat(new String(bytes.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(changelog.toString());
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+		}
 	}
 
 	private ChangelogAssertions test(String content) {
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2026 DiffPlug
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.diffplug.spotless.changelog;
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class FingerprintTest {
+	@Test
+	public void murmur3() {
+		// reference values of MurmurHash3_x64_128 with seed 0, as little-endian h1 then h2
+		assertMurmur3("", "00000000000000000000000000000000");
+		assertMurmur3("hell", "67f8103e694299624753ebba820bdb92");
+		assertMurmur3("The quick brown fox jumps over the lazy dog", "6c1b07bc7bbc4be347939ac4a93c437a");
+	}
+
+	private static void assertMurmur3(String input, String hex) {
+		byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+		Assertions.assertThat(Fingerprint.murmur3(bytes, bytes.length).toHex()).isEqualTo(hex);
+	}
+
+	@Test
+	public void nextVersionCfg() {
+		NextVersionCfg cfg = new NextVersionCfg();
+		Assertions.assertThat(fingerprint(cfg)).isEqualTo(fingerprint(new NextVersionCfg()));
+
+		cfg.function.ifFoundBumpAdded("### Added", "### Changed");
+		Fingerprint bumpChanged = fingerprint(cfg);
+		Assertions.assertThat(bumpChanged).isNotEqualTo(fingerprint(new NextVersionCfg()));
+		// moving a string between the lists changes the fingerprint
+		cfg.function.ifFoundBumpAdded("### Added");
+		cfg.function.ifFoundBumpBreaking(Arrays.asList("**BREAKING**", "### Changed"));
+		Assertions.assertThat(fingerprint(cfg)).isNotEqualTo(bumpChanged);
+
+		NextVersionCfg forced = new NextVersionCfg();
+		forced.forceNextVersion = "";
+		Assertions.assertThat(fingerprint(forced)).isNotEqualTo(fingerprint(new NextVersionCfg()));
+
+		NextVersionCfg condensed = new NextVersionCfg();
+		condensed.function = new NextVersionFunction.SemverCondense_XY0_to_XY();
+		Assertions.assertThat(fingerprint(condensed)).isNotEqualTo(fingerprint(new NextVersionCfg()));
+	}
+
+	private static Fingerprint fingerprint(NextVersionCfg cfg) {
+		Fingerprint.Builder fingerprint = Fingerprint.builder();
+		cfg.addTo(fingerprint);
+		return fingerprint.build();
+	}
+}
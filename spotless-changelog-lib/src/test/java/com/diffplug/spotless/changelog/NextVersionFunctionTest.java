@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2019-2020 DiffPlug
+ * Copyright (C) 2019-2026 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,10 @@
 package com.diffplug.spotless.changelog;
 
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import org.assertj.core.api.AbstractStringAssert;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
@@ -94,6 +98,129 @@ public class NextVersionFunctionTest {
 		test("\n## [Unreleased]\nSome change\n### Added\n**BREAKING**\n## [1.2.5] - 2020-10-10\n").isEqualTo("2.0.0");
 	}
 
+	@Test
+	public void semverPreReleaseAndBuild() {
+		test("\n## [Unreleased]\nSome change\n## [1.2.0-rc.1] - 2020-10-10\n").isEqualTo("1.2.1");
+		test("\n## [Unreleased]\nSome change\n### Added\n## [1.2.0+build.5] - 2020-10-10\n").isEqualTo("1.3.0");
+		test("\n## [Unreleased]\nSome change\n**BREAKING**\n## [1.2.0-beta-2+exp.sha.5114f85] - 2020-10-10\n").isEqualTo("2.0.0");
+		test("\n## [Unreleased]\nSome change\n## [1.2.0.v20201010] - 2020-10-10\n").isEqualTo("1.2.1");
+	}
+
+	@Test
+	public void versionNumber() {
+		VersionNumber version = new VersionNumber();
+		String chars = "[10.20.30-rc.1+build]";
+		version.parse(chars, 1, chars.length() - 1);
+		Assertions.assertThat(version.major).isEqualTo(10);
+		Assertions.assertThat(version.minor).isEqualTo(20);
+		Assertions.assertThat(version.micro).isEqualTo(30);
+		Assertions.assertThat(chars.substring(version.preReleaseStart, version.preReleaseEnd)).isEqualTo("rc.1");
+		Assertions.assertThat(chars.substring(version.buildStart, version.buildEnd)).isEqualTo("build");
+
+		// the same instance parses the next version from scratch
+		version.parse(" 3 ");
+		Assertions.assertThat(VersionNumber.appendTo(new StringBuilder(), version.major, version.minor, version.micro).toString()).isEqualTo("3.0.0");
+		Assertions.assertThat(version.preReleaseStart).isEqualTo(-1);
+		Assertions.assertThat(version.buildStart).isEqualTo(-1);
+
+		Assertions.assertThatThrownBy(() -> version.parse("1.x")).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("invalid version \"1.x\": expected a number at index 2");
+		Assertions.assertThatThrownBy(() -> version.parse("1.2.3-")).hasMessage("invalid version \"1.2.3-\": empty pre-release");
+		Assertions.assertThatThrownBy(() -> version.parse("1.2.3+")).hasMessage("invalid version \"1.2.3+\": empty build metadata");
+		Assertions.assertThatThrownBy(() -> version.parse("1.2.3 4")).hasMessage("invalid version \"1.2.3 4\": unexpected ' ' at index 5");
+		Assertions.assertThatThrownBy(() -> version.parse("99999999999")).hasMessage("invalid version \"99999999999\": number is too large");
+	}
+
+	@Test
+	public void manyBumpStrings() {
+		NextVersionCfg cfg = new NextVersionCfg();
+		cfg.function.ifFoundBumpAdded("### Added", "### New", "feat:");
+		cfg.function.ifFoundBumpBreaking("**BREAKING**", "BREAKING CHANGE", "breaks:");
+		test(cfg, "\n## [Unreleased]\n- fix: bug\n## [1.2.0] - 2020-10-10\n").isEqualTo("1.2.1");
+		test(cfg, "\n## [Unreleased]\n- feat: thing\n## [1.2.0] - 2020-10-10\n").isEqualTo("1.3.0");
+		test(cfg, "\n## [Unreleased]\n- feat: thing\n- BREAKING CHANGE\n## [1.2.0] - 2020-10-10\n").isEqualTo("2.0.0");
+		test(cfg, "\n## [Unreleased]\n- breaks: api\n## [0.2.0] - 2020-10-10\n").isEqualTo("0.3.0");
+		// changing the lists after they were compiled takes effect
+		cfg.function.ifFoundBumpBreaking("feat:");
+		test(cfg, "\n## [Unreleased]\n- feat: thing\n## [1.2.0] - 2020-10-10\n").isEqualTo("2.0.0");
+	}
+
+	@Test
+	public void bumpMatcher() {
+		List<String> breaking = Arrays.asList("hers", "", "x");
+		List<String> added = Arrays.asList("he", "she", "his", "hershey");
+		BumpMatcher matcher = BumpMatcher.compile(Arrays.asList("hers", "ushers"), added);
+		Assertions.assertThat(matcher.highestBump("ushe", BumpMatcher.BREAKING)).isEqualTo(BumpMatcher.ADDED);
+		Assertions.assertThat(matcher.highestBump("usher", BumpMatcher.BREAKING)).isEqualTo(BumpMatcher.ADDED);
+		Assertions.assertThat(matcher.highestBump("ushers", BumpMatcher.BREAKING)).isEqualTo(BumpMatcher.BREAKING);
+		Assertions.assertThat(matcher.highestBump("hishe", BumpMatcher.BREAKING)).isEqualTo(BumpMatcher.ADDED);
+		Assertions.assertThat(matcher.highestBump("xyz", BumpMatcher.BREAKING)).isEqualTo(BumpMatcher.NONE);
+		Assertions.assertThat(matcher.isCompiledFrom(Arrays.asList("hers", "ushers"), added)).isTrue();
+		Assertions.assertThat(matcher.isCompiledFrom(breaking, added)).isFalse();
+
+		// same answers as String.contains, including for the empty string
+		Random random = new Random(0);
+		for (int round = 0; round < 500; ++round) {
+			List<String> toFindBreaking = randomStrings(random), toFindAdded = randomStrings(random);
+			BumpMatcher randomMatcher = BumpMatcher.compile(toFindBreaking, toFindAdded);
+			String text = randomString(random, 30);
+			int expected = toFindBreaking.stream().anyMatch(text::contains) ? BumpMatcher.BREAKING : toFindAdded.stream().anyMatch(text::contains) ? BumpMatcher.ADDED : BumpMatcher.NONE;
+			Assertions.assertThat(randomMatcher.highestBump(text, BumpMatcher.BREAKING)).isEqualTo(expected);
+		}
+		Assertions.assertThat(BumpMatcher.compile(breaking, added).highestBump("", BumpMatcher.BREAKING)).isEqualTo(BumpMatcher.BREAKING);
+	}
+
+	private static List<String> randomStrings(Random random) {
+		List<String> strings = new ArrayList<>();
+		for (int i = random.nextInt(4); i > 0; --i) {
+			strings.add(randomString(random, 4));
+		}
+		return strings;
+	}
+
+	private static String randomString(Random random, int maxLength) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = random.nextInt(maxLength + 1); i > 0; --i) {
+			builder.append((char) ('a' + random.nextInt(3)));
+		}
+		return builder.toString();
+	}
+
+	@Test
+	public void sectionBumps() {
+		NextVersionCfg cfg = new NextVersionCfg();
+		cfg.function.ifFoundBumpAdded();
+		cfg.function.ifFoundBumpBreaking();
+		cfg.function.ifSectionBumpAdded("Added");
+		cfg.function.ifSectionBumpBreaking("Removed");
+		test(cfg, "\n## [Unreleased]\n### Fixed\n- bug\n## [1.2.0] - 2020-10-10\n").isEqualTo("1.2.1");
+		test(cfg, "\n## [Unreleased]\n### Added\n- thing\n## [1.2.0] - 2020-10-10\n").isEqualTo("1.3.0");
+		test(cfg, "\n## [Unreleased]\n### Added\n#123 new flag\n## [1.2.0] - 2020-10-10\n").isEqualTo("1.3.0");
+		test(cfg, "\n## [Unreleased]\n### Added\n- thing\n### Removed\n- other\n## [1.2.0] - 2020-10-10\n").isEqualTo("2.0.0");
+		test(cfg, "\n## [Unreleased]\n### Added\n- thing\n### Removed\n- other\n## [0.2.0] - 2020-10-10\n").isEqualTo("0.3.0");
+		// an empty section, or a heading inside a code block, doesn't bump
+		test(cfg, "\n## [Unreleased]\n### Added\n\n### Fixed\n- bug\n## [1.2.0] - 2020-10-10\n").isEqualTo("1.2.1");
+		test(cfg, "\n## [Unreleased]\n### Fixed\n```\n### Added\nnot really\n```\n## [1.2.0] - 2020-10-10\n").isEqualTo("1.2.1");
+	}
+
+	@Test
+	public void unreleasedSections() {
+		UnreleasedSections sections = UnreleasedSections.parse("\nIntro\n### Added\n- a\n~~~\n### Fixed\n~~~\n### Removed\n\n#### Details\n### Added\n- b\n# Other");
+		Assertions.assertThat(sections.headings()).containsExactly("Added", "Removed");
+		Assertions.assertThat(sections.isNonEmpty("Added")).isTrue();
+		Assertions.assertThat(sections.isNonEmpty("Removed")).isTrue();
+		Assertions.assertThat(sections.isNonEmpty("Fixed")).isFalse();
+		Assertions.assertThat(sections.content("Added")).isEqualTo("- a\n~~~\n### Fixed\n~~~\n- b\n");
+		Assertions.assertThat(sections.content("Fixed")).isNull();
+		Assertions.assertThat(UnreleasedSections.parse("\n### Added\n\n").isNonEmpty("Added")).isFalse();
+		Assertions.assertThat(UnreleasedSections.parse("").headings()).isEmpty();
+
+		// text which starts with a '#' isn't a heading, so it doesn't end the section
+		UnreleasedSections issues = UnreleasedSections.parse("\n### Added\n#123 new flag\n#hashtag\n##\n- after");
+		Assertions.assertThat(issues.isNonEmpty("Added")).isTrue();
+		Assertions.assertThat(issues.content("Added")).isEqualTo("#123 new flag\n#hashtag\n");
+	}
+
 	@Test
 	public void semverBrand() {
 		NextVersionCfg cfg = new NextVersionCfg();
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2019-2020 DiffPlug
+ * Copyright (C) 2019-2026 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -40,4 +40,30 @@ public class PoolStringTest {
 		Assertions.assertThat(untilZ).hasToString("abcdef");
 		Assertions.assertThat(abcdef.after(untilZ)).hasToString("");
 	}
+
+	@Test
+	public void lineNumbers() {
+		PoolString abc = PoolString.of("a\nb\n\nc");
+		Assertions.assertThat(abc.subSequence(0, 1).baseLineNumberStart()).isEqualTo(1);
+		Assertions.assertThat(abc.subSequence(0, 1).baseLineNumberEnd()).isEqualTo(1);
+		Assertions.assertThat(abc.subSequence(0, 2).baseLineNumberEnd()).isEqualTo(2);
+		Assertions.assertThat(abc.subSequence(2, 3).baseLineNumberStart()).isEqualTo(2);
+		Assertions.assertThat(abc.subSequence(4, 5).baseLineNumberStart()).isEqualTo(3);
+		Assertions.assertThat(abc.subSequence(5, 6).baseLineNumberStart()).isEqualTo(4);
+		Assertions.assertThat(PoolString.of("").baseLineNumberStart()).isEqualTo(1);
+	}
+
+	@Test
+	public void concatDoesNotAlias() {
+		PoolString abcdef = PoolString.of("abcdef");
+		PoolString ab = abcdef.subSequence(0, 2);
+		PoolString ef = abcdef.subSequence(4, 6);
+		Assertions.assertThat(ab.concat(abcdef.subSequence(2, 4))).hasToString("abcd");
+
+		PoolString abef = ab.concat(ef);
+		Assertions.assertThat(abef.concat("x")).hasToString("abefx");
+		Assertions.assertThat(abef.concat("y")).hasToString("abefy");
+		Assertions.assertThat(abef).hasToString("abef");
+		Assertions.assertThat(PoolString.concat(ef, "-", ab)).hasToString("ef-ab");
+	}
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2019-2024 DiffPlug
+ * Copyright (C) 2019-2026 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@ package com.diffplug.spotless.changelog.gradle;
 
 import com.diffplug.common.base.Errors;
 import com.diffplug.common.base.Preconditions;
+import com.diffplug.spotless.changelog.CacheCfg;
 import com.diffplug.spotless.changelog.Changelog;
 import com.diffplug.spotless.changelog.ChangelogAndNext;
 import com.diffplug.spotless.changelog.GitCfg;
@@ -32,6 +33,7 @@ import java.util.Objects;
 import org.gradle.api.GradleException;
 import org.gradle.api.Project;
 import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
 
 /** Plugin DSL. */
 public class ChangelogExtension {
@@ -46,6 +48,7 @@ public class ChangelogExtension {
 		data.changelogFile = project.file(ChangelogAndNext.DEFAULT_FILE);
 		data.nextVersionCfg = new NextVersionCfg();
 		data.gitCfg = new GitCfg();
+		data.cacheCfg = new CacheCfg();
 		// configuration cache workaround
 		data.projectRoot = project.getRootDir();
 		data.projectName = project.getName();
@@ -58,6 +61,9 @@ public class ChangelogExtension {
 		File changelogFile;
 		NextVersionCfg nextVersionCfg;
 		GitCfg gitCfg;
+		CacheCfg cacheCfg;
+		/** The {@link ChangelogPlugin.SharedVersionsService}, if it is enabled, but perhaps from another classloader. */
+		Provider<? extends BuildService<?>> sharedVersions;
 		boolean enforceCheck = true;
 
 		File projectRoot;
@@ -91,7 +97,12 @@ public class ChangelogExtension {
 								// thrown on Prelease == null
 								cfgToUse = nextVersionCfg;
 							}
-							model = ChangelogAndNext.calculateUsingCache(changelogFile, cfgToUse);
+							CacheCfg cacheCfgToUse = cacheCfg;
+							if (sharedVersions != null) {
+								cacheCfgToUse = cacheCfg.shallowCopy();
+								cacheCfgToUse.sharedVersions = ChangelogPlugin.SharedVersionsService.versions(sharedVersions.get());
+							}
+							model = ChangelogAndNext.calculateUsingCache(changelogFile, cfgToUse, cacheCfgToUse);
 						} catch (IOException e) {
 							throw Errors.asRuntime(e);
 						}
@@ -109,7 +120,7 @@ public class ChangelogExtension {
 		}
 
 		String getVersionLast() {
-			return model().changelog().versionLast();
+			return model().versions().last();
 		}
 
 		String getVersionNext() {
@@ -119,7 +130,7 @@ public class ChangelogExtension {
 
 	/** Reads the last-published version - you can't change the configuration after calling this method. */
 	public String getVersionLast() {
-		return data.model().changelog().versionLast();
+		return data.model().versions().last();
 	}
 
 	/** Calculates the next-to-publish version - you can't change the configuration after calling this method. */
@@ -191,6 +202,40 @@ public class ChangelogExtension {
 		ifFoundBumpBreaking(Arrays.asList(toFind));
 	}
 
+	/**
+	 * If any of these `### ` sections in the `## [Unreleased]` section have anything
+	 * in them, then the next version will bump the `added` place in `breaking.added.fixed`
+	 * (unless overruled by `ifSectionBumpBreaking` or `ifFoundBumpBreaking`). Unlike
+	 * `ifFoundBumpAdded`, a heading inside a code block doesn't count.
+	 *
+	 * Default value is `[]`, e.g. `ifSectionBumpAdded 'Added'`
+	 */
+	public void ifSectionBumpAdded(List<String> headings) {
+		data.assertNotCalculatedYet();
+		data.nextVersionCfg.function.ifSectionBumpAdded(headings);
+	}
+
+	/** @see #ifSectionBumpAdded(List) */
+	public void ifSectionBumpAdded(String... headings) {
+		ifSectionBumpAdded(Arrays.asList(headings));
+	}
+
+	/**
+	 * If any of these `### ` sections in the `## [Unreleased]` section have anything
+	 * in them, then the next version will bump the `breaking` place in `breaking.added.fixed`.
+	 *
+	 * Default value is `[]`, e.g. `ifSectionBumpBreaking 'Removed'`
+	 */
+	public void ifSectionBumpBreaking(List<String> headings) {
+		data.assertNotCalculatedYet();
+		data.nextVersionCfg.function.ifSectionBumpBreaking(headings);
+	}
+
+	/** @see #ifSectionBumpBreaking(List) */
+	public void ifSectionBumpBreaking(String... headings) {
+		ifSectionBumpBreaking(Arrays.asList(headings));
+	}
+
 	/** Short-circuits the next-version calculation and just uses this string. */
 	public void forceNextVersion(String forceNextVersion) {
 		data.assertNotCalculatedYet();
@@ -211,6 +256,45 @@ public class ChangelogExtension {
 		}
 	}
 
+	/**
+	 * If you set this to true, then the calculated versions are kept in the Gradle user home,
+	 * so that a fresh daemon or CI job can skip parsing the changelog when nothing has changed.
+	 * Default is false.
+	 */
+	public void persistentCache(boolean persistentCache) {
+		data.assertNotCalculatedYet();
+		data.cacheCfg.persistentDir = persistentCache ? new File(project.getGradle().getGradleUserHomeDir(), "caches/spotless-changelog") : null;
+	}
+
+	/**
+	 * If you set this to true, then the parsed changelog is kept in memory (until the JVM needs the memory back),
+	 * so that `changelogCheck` in a warm daemon doesn't have to read and parse the changelog again. Default is false.
+	 */
+	public void cacheParsedChangelog(boolean cacheParsedChangelog) {
+		data.assertNotCalculatedYet();
+		data.cacheCfg.keepChangelogs = cacheParsedChangelog;
+	}
+
+	/**
+	 * If you set this to true, then the changelog's directory is watched for changes until the end of the build,
+	 * so that an unchanged changelog costs no filesystem calls after it is first checked. A change is noticed
+	 * shortly after it happens, rather than instantly. Default is false.
+	 */
+	public void watchChangelogFile(boolean watchChangelogFile) {
+		data.assertNotCalculatedYet();
+		data.cacheCfg.watchFiles = watchChangelogFile;
+	}
+
+	/**
+	 * If you set this to true, then the calculated versions are shared with every other copy of this plugin
+	 * in the same build, e.g. subprojects with their own plugin classpath. They are only shared for the
+	 * length of one build. Default is false.
+	 */
+	public void shareCacheAcrossClassloaders(boolean shareCacheAcrossClassloaders) {
+		data.assertNotCalculatedYet();
+		data.sharedVersions = shareCacheAcrossClassloaders ? ChangelogPlugin.SharedVersionsService.find(project.getGradle()) : null;
+	}
+
 	/**
 	 * If you set this to `no`, then the ssh host key checking over ssh:// remotes will be disabled.
 	 * By default strict host key checking is `yes`. Make sure that there is an entry
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2019-2024 DiffPlug
+ * Copyright (C) 2019-2026 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,17 +17,19 @@ package com.diffplug.spotless.changelog.gradle;
 
 import com.diffplug.common.base.StringPrinter;
 import com.diffplug.common.globals.Time;
+import com.diffplug.spotless.changelog.CacheStats;
 import com.diffplug.spotless.changelog.Changelog;
 import com.diffplug.spotless.changelog.ChangelogAndNext;
 import com.diffplug.spotless.changelog.GitActions;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.time.LocalDate;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 import javax.inject.Inject;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.gradle.api.DefaultTask;
@@ -35,11 +37,15 @@ import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
 import org.gradle.api.plugins.BasePlugin;
 import org.gradle.api.plugins.JavaBasePlugin;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceRegistration;
 import org.gradle.api.services.BuildServiceParameters;
 import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.TaskAction;
@@ -60,6 +66,8 @@ public class ChangelogPlugin implements Plugin<Project> {
 		}
 
 		Provider<TaskOrderingService> taskOrdering = project.getGradle().getSharedServices().registerIfAbsent("ChangelogService", TaskOrderingService.class, unused -> {});
+		// created now, so that it gets closed (and logs) at the end of the build, once for each copy of this plugin
+		project.getGradle().getSharedServices().registerIfAbsent(CacheStatsService.name(), CacheStatsService.class, unused -> {}).get();
 
 		TaskProvider<PushWillRunTask> pushWillRun = project.getTasks().register(PushWillRunTask.NAME, PushWillRunTask.class, task -> {
 			task.getTaskOrderingService().set(taskOrdering);
@@ -114,6 +122,58 @@ public class ChangelogPlugin implements Plugin<Project> {
 		}
 	}
 
+	/**
+	 * Logs the statistics of the changelog cache for each build, run with `--info` to see them, and stops watching
+	 * files at the end of the build, so that the daemon doesn't keep a watch service for every copy of the plugin.
+	 */
+	public static abstract class CacheStatsService implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+		private final CacheStats atStart = ChangelogAndNext.cacheStats();
+
+		/** Each copy of this plugin has its own cache, so each needs its own service. */
+		static String name() {
+			return "ChangelogCacheStats" + Integer.toHexString(System.identityHashCode(CacheStatsService.class));
+		}
+
+		@Override
+		public void close() {
+			ChangelogAndNext.stopWatchingFiles();
+			Logger logger = Logging.getLogger(ChangelogPlugin.class);
+			if (logger.isInfoEnabled()) {
+				logger.info("spotless-changelog cache: " + ChangelogAndNext.cacheStats().minus(atStart));
+			}
+		}
+	}
+
+	/**
+	 * Holds the versions which {@code shareCacheAcrossClassloaders} shares, for the length of one build. A copy of
+	 * the plugin from another classloader can't cast this to its own copy of the class, so everyone only uses it
+	 * through the JDK's {@link Supplier} and {@link ConcurrentMap}.
+	 */
+	public static abstract class SharedVersionsService implements BuildService<BuildServiceParameters.None>, Supplier<ConcurrentMap<String, String>> {
+		static final String NAME = "ChangelogSharedVersions";
+
+		private final ConcurrentMap<String, String> versions = new ConcurrentHashMap<>();
+
+		@Override
+		public ConcurrentMap<String, String> get() {
+			return versions;
+		}
+
+		/** Returns the service which was registered for this build, no matter which copy of the plugin registered it. */
+		static Provider<? extends BuildService<?>> find(Gradle gradle) {
+			BuildServiceRegistration<?, ?> registration = gradle.getSharedServices().getRegistrations().findByName(NAME);
+			if (registration != null) {
+				return registration.getService();
+			}
+			return gradle.getSharedServices().registerIfAbsent(NAME, SharedVersionsService.class, unused -> {});
+		}
+
+		@SuppressWarnings("unchecked")
+		static ConcurrentMap<String, String> versions(BuildService<?> service) {
+			return ((Supplier<ConcurrentMap<String, String>>) service).get();
+		}
+	}
+
 	public static abstract class PushWillRunTask extends DefaultTask {
 		public static final String NAME = "changelogInternalPushWillRun";
 
@@ -227,7 +287,7 @@ public class ChangelogPlugin implements Plugin<Project> {
 			ChangelogAndNext model = data.model();
 			LocalDate localDate = LocalDate.now(Time.clockUtc());
 			Changelog bumped = model.changelog().releaseUnreleased(model.versions().next(), localDate.toString());
-			Files.write(data.changelogFile.toPath(), bumped.toString().getBytes(StandardCharsets.UTF_8));
+			bumped.writeTo(data.changelogFile);
 		}
 	}
 
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2019-2022 DiffPlug
+ * Copyright (C) 2019-2026 DiffPlug
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -114,6 +114,23 @@ public class ChangelogPluginTest extends GradleHarness {
 				.startsWith("> Task :changelogPrint\nundertest 1.0.0 -> 2.0.0");
 	}
 
+	@Test
+	public void versionLastDoesntParseWholeChangelog() throws IOException {
+		writeSpotlessChangelog();
+		setFile("build.gradle").toLines(read("build.gradle"),
+				"def before = com.diffplug.spotless.changelog.ChangelogAndNext.cacheStats()",
+				"def versionLast = spotlessChangelog.versionLast",
+				"println 'versionLast=' + versionLast + ' lazyLoads=' + com.diffplug.spotless.changelog.ChangelogAndNext.cacheStats().minus(before).lazyChangelogLoads()");
+		setFile("CHANGELOG.md").toLines(
+				"",
+				"## [Unreleased]",
+				"",
+				"## [1.0.0] - 2020-10-10",
+				"",
+				"## [0.9.0] - 2020-01-01");
+		assertOutput("help").contains("versionLast=1.0.0 lazyLoads=0");
+	}
+
 	@Test
 	public void changelogBump() throws IOException {
 		writeSpotlessChangelog();